@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.benchmarks;
+
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.types.ServerCreate;
+import io.minecloud.db.redis.msg.types.ServerStartNotif;
+import io.minecloud.db.redis.msg.types.Teleport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding path of received messages, as done by ChannelPubSub and typed callbacks.
+ * Run with -prof gc to get the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageDecodeBenchmark {
+    private byte[] serverCreate;
+    private byte[] teleport;
+    private byte[] startNotif;
+
+    @Setup
+    public void setup() {
+        serverCreate = Message.messageFrom(new ServerCreate("node-1", "main", "lobby",
+                Collections.singletonMap("map", "lobby"))).raw();
+        teleport = Message.messageFrom(new Teleport("Notch", "lobby12")).raw();
+        startNotif = Message.messageFrom(new ServerStartNotif("lobby12")).raw();
+    }
+
+    @Benchmark
+    public ServerCreate decodeServerCreate() {
+        return Message.decode(serverCreate).as(ServerCreate.class);
+    }
+
+    @Benchmark
+    public Teleport decodeTeleport() {
+        return Message.decode(teleport).as(Teleport.class);
+    }
+
+    @Benchmark
+    public ServerStartNotif decodeStartNotif() {
+        return Message.decode(startNotif).as(ServerStartNotif.class);
+    }
+}
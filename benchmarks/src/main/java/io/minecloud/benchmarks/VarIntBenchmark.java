@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.benchmarks;
+
+import io.minecloud.db.redis.msg.binary.MessageInputStream;
+import io.minecloud.db.redis.msg.binary.MessageOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of batches of varints, with values spread over every encoded size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VarIntBenchmark {
+    private static final int BATCH = 1024;
+
+    private final int[] ints = new int[BATCH];
+    private final long[] longs = new long[BATCH];
+    private final MessageOutputStream os = new MessageOutputStream(BATCH * 10);
+    private byte[] encodedInts;
+    private byte[] encodedSignedInts;
+    private byte[] encodedLongs;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < BATCH; i++) {
+            ints[i] = random.nextInt() >> random.nextInt(32);
+            longs[i] = random.nextLong() >> random.nextInt(64);
+        }
+
+        encodedInts = encodeInts();
+        encodedSignedInts = encodeSignedInts();
+        encodedLongs = encodeLongs();
+    }
+
+    @Benchmark
+    public byte[] encodeInts() {
+        os.reset();
+
+        for (int i : ints) {
+            os.writeVarInt32(i);
+        }
+
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeSignedInts() {
+        os.reset();
+
+        for (int i : ints) {
+            os.writeSignedVarInt32(i);
+        }
+
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeLongs() {
+        os.reset();
+
+        for (long l : longs) {
+            os.writeSignedVarInt64(l);
+        }
+
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public int decodeInts() {
+        MessageInputStream is = new MessageInputStream(encodedInts);
+        int sum = 0;
+
+        for (int i = 0; i < BATCH; i++) {
+            sum += is.readVarInt32();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int decodeSignedInts() {
+        MessageInputStream is = new MessageInputStream(encodedSignedInts);
+        int sum = 0;
+
+        for (int i = 0; i < BATCH; i++) {
+            sum += is.readSignedVarInt32();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long decodeLongs() {
+        MessageInputStream is = new MessageInputStream(encodedLongs);
+        long sum = 0;
+
+        for (int i = 0; i < BATCH; i++) {
+            sum += is.readSignedVarInt64();
+        }
+
+        return sum;
+    }
+}
@@ -19,21 +19,27 @@ import com.google.common.io.Files;
 import io.minecloud.Cached;
 import io.minecloud.MineCloud;
 import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.db.redis.HeartbeatRegistry;
+import io.minecloud.db.redis.LiveState;
+import io.minecloud.db.redis.PlayerPresence;
 import io.minecloud.db.redis.RedisDatabase;
-import io.minecloud.db.redis.msg.binary.MessageOutputStream;
+import io.minecloud.db.redis.msg.types.ServerShutdownNotif;
+import io.minecloud.db.redis.msg.types.ServerStartNotif;
 import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
+import io.minecloud.db.redis.registry.ServerRegistry;
 import io.minecloud.models.player.PlayerData;
 import io.minecloud.models.plugins.PluginType;
 import io.minecloud.models.server.Server;
+import io.minecloud.models.server.ServerRepository;
 import io.minecloud.models.server.World;
 import io.minecloud.models.server.type.ServerType;
 import org.bukkit.Bukkit;
 import org.bukkit.WorldCreator;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.util.FileUtil;
-import redis.clients.jedis.Jedis;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,13 +47,21 @@ import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.logging.Level;
 
 public class MineCloudPlugin extends JavaPlugin {
     private Cached<Server> server;
     private MongoDatabase mongo;
     private RedisDatabase redis;
+    private HeartbeatRegistry heartbeats;
+    private PlayerPresence presence;
+    private LiveState liveState;
+    private ServerRegistry registry;
     private String serverId;
 
     @Override
@@ -57,6 +71,8 @@ public class MineCloudPlugin extends JavaPlugin {
         serverId = System.getenv("server_id");
         mongo = MineCloud.instance().mongo();
         redis = MineCloud.instance().redis();
+        presence = PlayerPresence.create(redis);
+        liveState = LiveState.create(redis);
 
         try {
             Files.write(ManagementFactory.getRuntimeMXBean().getName().split("@")[0].getBytes(Charset.defaultCharset()),
@@ -65,31 +81,39 @@ public class MineCloudPlugin extends JavaPlugin {
             ex.printStackTrace();
         }
 
+        // telemetry goes to the live state, the document is only written once to mark the server as started
         new BukkitRunnable() {
+            private boolean started;
+
             @Override
             public void run() {
-                Server server = mongo.repositoryBy(Server.class).findFirst(serverId);
                 Runtime runtime = Runtime.getRuntime();
+                int ramUsage = (int) ((runtime.totalMemory() - runtime.freeMemory()) / 1048576);
+                ServerRepository repository = mongo.repositoryBy(Server.class);
+                boolean exists = started ? repository.exists("_id", serverId) :
+                        repository.updateFields(serverId, Collections.singletonMap("ramUsage", ramUsage));
 
-                if (server == null) {
+                if (!exists) {
                     getLogger().info("Server removed from db, shutting down");
                     Bukkit.shutdown();
                     return;
                 }
 
-                server.setRamUsage((int) ((runtime.totalMemory() - runtime.freeMemory()) / 1048576));
-                server.setTps(fetchTps());
-                updatePlayers(server);
-
-                mongo.repositoryBy(Server.class).save(server);
-
-                //Heartbeat
-                try (Jedis jedis = redis.grabResource()) {
-                    jedis.hset("server:" + server.entityId(), "heartbeat", String.valueOf(System.currentTimeMillis()));
-                }
+                started = true;
+                liveState.updateServer(serverId, ramUsage, fetchTps(), playerData());
+                presence.refresh(onlinePlayers());
             }
         }.runTaskTimerAsynchronously(this, 40, 200);
 
+        // scheduled on the main thread, so a hung server stops beating
+        heartbeats = HeartbeatRegistry.create(redis, HeartbeatRegistry.SERVERS);
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                heartbeats.beatAsync(serverId);
+            }
+        }.runTaskTimer(this, 0, HeartbeatRegistry.INTERVAL * 20);
+
         redis.addChannel(SimpleRedisChannel.create("server-start-notif", redis));
         redis.addChannel(SimpleRedisChannel.create("server-shutdown-notif", redis));
 
@@ -149,16 +173,9 @@ public class MineCloudPlugin extends JavaPlugin {
             Bukkit.getPluginManager().enablePlugin(plugin);
         }
 
-        try {
-            MessageOutputStream os = new MessageOutputStream();
-
-            os.writeString(server().entityId());
-
-            redis.channelBy("server-start-notif").publish(os.toMessage());
-        } catch (IOException e) {
-            getLogger().log(Level.SEVERE, "Unable to publish server create message, shutting down", e);
-            Bukkit.shutdown();
-        }
+        registry = ServerRegistry.create(redis, server().network().name());
+        registry.add(serverId, server().nodeSnapshot().privateIp(), server().port());
+        redis.channelBy("server-start-notif").publish(new ServerStartNotif(server().entityId()));
 
         new File("/var/minecloud/", serverId).deleteOnExit();
     }
@@ -222,39 +239,58 @@ public class MineCloudPlugin extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        try (Jedis jedis = this.redis.grabResource()) {
-            jedis.hdel("server:" + server().entityId(), "heartbeat");
+        heartbeats.remove(serverId);
+        Bukkit.getOnlinePlayers().forEach((player) ->
+                presence.leftServer(player.getUniqueId(), player.getName(), serverId));
+
+        if (registry != null) {
+            registry.remove(serverId);
         }
 
+        liveState.removeServer(serverId);
         mongo.repositoryBy(Server.class).deleteById(serverId);
 
-        try {
-            MessageOutputStream os = new MessageOutputStream();
-
-            os.writeString(serverId);
-
-            redis.channelBy("server-shutdown-notif").publish(os.toMessage());
-        } catch (IOException ex) {
-            ex.printStackTrace(); // almost impossible to happen
-        }
+        redis.channelBy("server-shutdown-notif").publish(new ServerShutdownNotif(serverId));
     }
 
     public void updatePlayers(Server server) {
+        server.setOnlinePlayers(playerData());
+    }
+
+    private List<PlayerData> playerData() {
         List<PlayerData> onlinePlayers = new ArrayList<>();
 
-        Bukkit.getOnlinePlayers().stream()
-                .forEach((player) -> {
-                    PlayerData data = new PlayerData();
+        Bukkit.getOnlinePlayers().forEach((player) -> onlinePlayers.add(playerData(player)));
+        return onlinePlayers;
+    }
 
-                    data.setHealth(player.getHealth());
-                    data.setMaxHealth(player.getMaxHealth());
-                    data.setName(player.getName());
-                    data.setId(player.getUniqueId().toString());
+    PlayerData playerData(Player player) {
+        PlayerData data = new PlayerData();
 
-                    onlinePlayers.add(data);
-                });
+        data.setHealth(player.getHealth());
+        data.setMaxHealth(player.getMaxHealth());
+        data.setName(player.getName());
+        data.setId(player.getUniqueId().toString());
+        return data;
+    }
+
+    private Map<UUID, String> onlinePlayers() {
+        Map<UUID, String> players = new HashMap<>();
+
+        Bukkit.getOnlinePlayers().forEach((player) -> players.put(player.getUniqueId(), player.getName()));
+        return players;
+    }
+
+    public String serverId() {
+        return serverId;
+    }
+
+    public LiveState liveState() {
+        return liveState;
+    }
 
-        server.setOnlinePlayers(onlinePlayers);
+    public PlayerPresence presence() {
+        return presence;
     }
 
     public Server server() {
@@ -16,7 +16,6 @@
 package io.minecloud.bukkit;
 
 import io.minecloud.models.player.PlayerData;
-import io.minecloud.models.server.Server;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
@@ -28,8 +27,6 @@ import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.util.List;
-
 public class PlayerTracker implements Listener {
     private MineCloudPlugin plugin;
 
@@ -39,33 +36,26 @@ public class PlayerTracker implements Listener {
 
     @EventHandler
     public void playerJoin(PlayerJoinEvent event) {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            Server server = plugin.server();
-            List<PlayerData> onlinePlayers = server.onlinePlayers();
-            Player player = event.getPlayer();
-            PlayerData data = new PlayerData();
-
-            data.setHealth(player.getHealth());
-            data.setMaxHealth(player.getMaxHealth());
-            data.setName(player.getName());
-            data.setId(player.getUniqueId().toString());
+        Player player = event.getPlayer();
+        PlayerData data = plugin.playerData(player);
 
-            onlinePlayers.add(data);
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            String server = plugin.serverId();
 
-            server.setOnlinePlayers(onlinePlayers);
-            plugin.updatePlayers(server);
-            plugin.mongo().repositoryBy(Server.class).save(server);
+            plugin.liveState().addPlayer(server, data);
+            plugin.presence().joinedServer(player.getUniqueId(), player.getName(), server);
         });
     }
 
     @EventHandler
     public void playerQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+
         Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            Server server = plugin.server();
+            String server = plugin.serverId();
 
-            server.removePlayer(event.getPlayer().getUniqueId());
-            plugin.updatePlayers(server);
-            plugin.mongo().repositoryBy(Server.class).save(server);
+            plugin.liveState().removePlayer(server, player.getUniqueId());
+            plugin.presence().leftServer(player.getUniqueId(), player.getName(), server);
         });
     }
 }
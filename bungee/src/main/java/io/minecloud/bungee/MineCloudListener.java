@@ -15,22 +15,28 @@
  */
 package io.minecloud.bungee;
 
+import io.minecloud.db.mongo.MongoExecutor;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.server.Server;
 import io.minecloud.models.server.ServerRepository;
 import net.md_5.bungee.api.ServerPing;
 import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.api.event.PlayerDisconnectEvent;
+import net.md_5.bungee.api.event.PostLoginEvent;
 import net.md_5.bungee.api.event.ProxyPingEvent;
 import net.md_5.bungee.api.event.ServerKickEvent;
 import net.md_5.bungee.api.plugin.Listener;
 import net.md_5.bungee.event.EventHandler;
 
-import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 public class MineCloudListener implements Listener {
-    private long lastUpdated = 0;
-    private int onlinePlayers = -1;
-    private int maxOnline = -1;
+    private volatile long lastUpdated = 0;
+    private volatile int onlinePlayers = -1;
+    private volatile int maxOnline = -1;
+    private CompletableFuture<Void> refreshing;
     private MineCloudPlugin plugin;
 
     MineCloudListener(MineCloudPlugin plugin) {
@@ -39,40 +45,92 @@ public class MineCloudListener implements Listener {
 
     @EventHandler
     public void onPing(ProxyPingEvent event) {
-        ServerPing ping = event.getResponse();
-        int online = 0;
-        int max = 0;
+        ServerPing ping = event.getResponse() == null ? new ServerPing() : event.getResponse();
 
-        if (ping == null) {
-            ping = new ServerPing();
+        if (onlinePlayers != -1) {
+            // serve the last counts, the ping never waits on a refresh once they are known
+            if ((System.currentTimeMillis() - lastUpdated) >= 5000L) {
+                refresh();
+            }
+
+            respond(event, ping);
+            return;
         }
 
-        if (onlinePlayers != -1 && (System.currentTimeMillis() - lastUpdated) < 5000L) {
-            online = onlinePlayers;
-            max = maxOnline;
-        } else {
-            Bungee bungee = plugin.bungee();
+        CompletableFuture<Void> refresh = refresh();
+
+        if (refresh == null) {
+            return;
+        }
+
+        event.registerIntent(plugin);
+        refresh.whenComplete((ignored, error) -> {
+            respond(event, ping);
+            event.completeIntent(plugin);
+        });
+    }
+
+    private void respond(ProxyPingEvent event, ServerPing ping) {
+        if (onlinePlayers == -1) {
+            return;
+        }
+
+        ping.setPlayers(new ServerPing.Players(maxOnline, onlinePlayers, ping.getPlayers().getSample()));
+        event.setResponse(ping);
+    }
+
+    private synchronized CompletableFuture<Void> refresh() {
+        if (refreshing != null && !refreshing.isDone()) {
+            return refreshing;
+        }
 
-            if (bungee == null)
-                return;
+        Bungee bungee = plugin.bungee();
 
-            ServerRepository repository = plugin.mongo.repositoryBy(Server.class);
-            Collection<Server> servers = repository.find(repository.createQuery().field("network").equal(bungee.network()))
-                    .asList();
+        if (bungee == null) {
+            return null;
+        }
+
+        ServerRepository repository = plugin.mongo.repositoryBy(Server.class);
+
+        refreshing = MongoExecutor.supply(() -> {
+            int online = 0;
+            int max = 0;
 
-            for (Server server : servers) {
-                online += server.onlinePlayers().size();
-                max += server.type().maxPlayers();
+            for (int players : repository.onlinePlayersByType(bungee.network()).values()) {
+                online += players;
+            }
+
+            for (int capacity : repository.capacityByType(bungee.network()).values()) {
+                max += capacity;
             }
 
-            onlinePlayers = online;
             maxOnline = max;
+            onlinePlayers = online;
             lastUpdated = System.currentTimeMillis();
-        }
+            return (Void) null;
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Was unable to refresh the player count", error);
+            }
+        });
 
-        ping.setPlayers(new ServerPing.Players(max, online, ping.getPlayers().getSample()));
+        return refreshing;
+    }
 
-        event.setResponse(ping);
+    @EventHandler
+    public void postLogin(PostLoginEvent event) {
+        ProxiedPlayer player = event.getPlayer();
+
+        plugin.getProxy().getScheduler().runAsync(plugin, () ->
+                plugin.presence.joinedProxy(player.getUniqueId(), player.getName(), System.getenv("bungee_id")));
+    }
+
+    @EventHandler
+    public void playerDisconnect(PlayerDisconnectEvent event) {
+        ProxiedPlayer player = event.getPlayer();
+
+        plugin.getProxy().getScheduler().runAsync(plugin, () ->
+                plugin.presence.leftProxy(player.getUniqueId(), player.getName(), System.getenv("bungee_id")));
     }
 
     @EventHandler
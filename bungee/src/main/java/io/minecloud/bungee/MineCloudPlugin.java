@@ -29,10 +29,16 @@ import io.minecloud.Cached;
 import io.minecloud.MineCloud;
 import io.minecloud.MineCloudException;
 import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.db.redis.HeartbeatRegistry;
+import io.minecloud.db.redis.PlayerPresence;
 import io.minecloud.db.redis.RedisDatabase;
-import io.minecloud.db.redis.msg.MessageType;
-import io.minecloud.db.redis.msg.binary.MessageInputStream;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.types.Teleport;
+import io.minecloud.db.redis.msg.types.TeleportType;
 import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
+import io.minecloud.db.redis.registry.RegistryFollower;
+import io.minecloud.db.redis.registry.RegistryListener;
+import io.minecloud.db.redis.registry.ServerRegistry;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.bungee.type.BungeeType;
 import io.minecloud.models.plugins.PluginType;
@@ -55,6 +61,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
@@ -62,20 +71,14 @@ public class MineCloudPlugin extends Plugin {
     Cached<Bungee> bungee;
     MongoDatabase mongo;
     RedisDatabase redis;
+    HeartbeatRegistry heartbeats;
+    PlayerPresence presence;
+    RegistryFollower registry;
+    private ScheduledFuture<?> heartbeat;
 
-    private final LoadingCache<String, ServerType> serverTypeCache;
     private final LoadingCache<String, Server> serverCache;
 
     public MineCloudPlugin() {
-        this.serverTypeCache = CacheBuilder.newBuilder().expireAfterWrite(30L, TimeUnit.SECONDS).build(new CacheLoader<String, ServerType>() {
-            @Override
-            public ServerType load(String key) throws Exception {
-                if (MineCloud.instance().mongo() == null) {
-                    return null;
-                }
-                return MineCloud.instance().mongo().repositoryBy(ServerType.class).findOne("_id", key);
-            }
-        });
         this.serverCache = CacheBuilder.newBuilder().expireAfterWrite(20L, TimeUnit.SECONDS).build(new CacheLoader<String, Server>() {
             @Override
             public Server load(String key) throws Exception {
@@ -93,6 +96,9 @@ public class MineCloudPlugin extends Plugin {
 
         mongo = MineCloud.instance().mongo();
         redis = MineCloud.instance().redis();
+        heartbeats = HeartbeatRegistry.create(redis, HeartbeatRegistry.BUNGEES);
+        heartbeat = heartbeats.beatPeriodically(System.getenv("bungee_id"));
+        presence = PlayerPresence.create(redis);
 
         try {
             Files.write(ManagementFactory.getRuntimeMXBean().getName().split("@")[0].getBytes(Charset.defaultCharset()), new File("app.pid"));
@@ -101,125 +107,17 @@ public class MineCloudPlugin extends Plugin {
         }
 
         getProxy().getScheduler().runAsync(this, () -> {
-            redis.addChannel(SimpleRedisChannel.create("server-start-notif", redis).addCallback(msg -> {
-                getProxy().getScheduler().runAsync(MineCloudPlugin.this, () -> {
-                    if (msg.type() != MessageType.BINARY) {
-                        return;
-                    }
-
-                    try (MessageInputStream stream = msg.contents()) {
-                        String serverId = stream.readString();
-                        Server server = serverCache.getUnchecked(serverId);
-                        if (server == null) {
-                            getLogger().log(Level.WARNING, "Could not find server with the ID {0}", new Object[] {
-                                    serverId
-                            });
-                            return;
-                        }
-                        addIfNotExist(server);
-                    } catch (IOException e) {
-                        getLogger().log(Level.SEVERE, "PANICPANICPANICPANIC");
-                    }
-                });
-            }));
-        });
-
-        getProxy().getScheduler().runAsync(this, () -> {
-            redis.addChannel(SimpleRedisChannel.create("server-shutdown-notif", redis).addCallback(msg -> {
-                if (msg.type() != MessageType.BINARY) {
-                    return;
-                }
-
-                try (MessageInputStream stream = msg.contents()) {
-                    String serverId = stream.readString();
-                    ServerInfo info = getProxy().getServers().remove(serverId);
-                    if (info != null) {
-                        getLogger().log(Level.INFO, "Stopped tracking {0}", new Object[] {
-                                serverId
-                        });
-                    }
-                }
-            }));
+            // broadcast by senders which do not know the bungee of the player, targeted otherwise, see PlayerPresence
+            redis.addChannel(SimpleRedisChannel.create("teleport", redis, Priority.HIGH).addCallback(Teleport.class, this::teleport));
+            redis.addChannel(SimpleRedisChannel.create("teleport:" + System.getenv("bungee_id"), redis, Priority.HIGH)
+                    .addCallback(Teleport.class, this::teleport));
         });
 
         getProxy().getScheduler().runAsync(this, () -> {
-            redis.addChannel(SimpleRedisChannel.create("teleport", redis).addCallback(msg -> {
-                if (msg.type() != MessageType.BINARY) {
-                    return;
-                }
-
-                try (MessageInputStream stream = msg.contents()) {
-                    String playerName = stream.readString();
-                    String serverName = stream.readString();
-
-                    ProxiedPlayer player = getProxy().getPlayer(playerName);
-                    ServerInfo info = getProxy().getServerInfo(serverName);
-
-                    if (player == null) {
-                        return;
-                    }
-
-                    if (info == null) {
-                        Server server = serverCache.getUnchecked(serverName);
-                        if (server != null) {
-                            info = addIfNotExist(server);
-                        }
-                    }
-
-                    player.connect(info, (result, error) -> {
-                        if (error != null) {
-                            getLogger().log(Level.SEVERE, "Failed to move {0} to {1}: {2}", new Object[] {
-                                    playerName, serverName, Throwables.getStackTraceAsString(error)
-                            });
-                        }
-                    });
-                }
-            }));
-        });
-
-        getProxy().getScheduler().runAsync(this, () -> {
-            redis.addChannel(SimpleRedisChannel.create("teleport-type", redis).addCallback(msg -> {
-                if (msg.type() != MessageType.BINARY) {
-                    return;
-                }
-
-                try (MessageInputStream stream = msg.contents()) {
-                    String playerName = stream.readString();
-                    String typeName = stream.readString();
-
-                    ProxiedPlayer player = getProxy().getPlayer(playerName);
-                    if (player == null) {
-                        return;
-                    }
-
-                    ServerType type = serverTypeCache.getUnchecked(typeName);
-                    if (type == null ) {
-                        getLogger().log(Level.WARNING, "Received teleport message with an invalid server type");
-                        return;
-                    }
-
-                    List<Server> servers = mongo.repositoryBy(Server.class).createQuery()
-                            .field("network").equal(bungee().network())
-                            .field("ramUsage").notEqual(-1)
-                            .field("port").notEqual(-1)
-                            .field("type").equal(type)
-                            .asList();
-
-                    if (servers.size() > 1) {
-                        Collections.sort(servers, (a, b) -> a.onlinePlayers().size() - b.onlinePlayers().size());
-                    }
-
-                    Server server = servers.get(0);
-                    ServerInfo info = addIfNotExist(server);
-                    player.connect(info, (result, error) -> {
-                        if (error != null) {
-                            getLogger().log(Level.SEVERE, "Failed to move {0} to {1}: {2}", new Object[] {
-                                    playerName, server.name(), Throwables.getStackTraceAsString(error)
-                            });
-                        }
-                    });
-                }
-            }));
+            redis.addChannel(SimpleRedisChannel.create("teleport-type", redis, Priority.HIGH)
+                    .addCallback(TeleportType.class, this::teleportType));
+            redis.addChannel(SimpleRedisChannel.create("teleport-type:" + System.getenv("bungee_id"), redis, Priority.HIGH)
+                    .addCallback(TeleportType.class, this::teleportType));
         });
 
         DBObject scope = new BasicDBObject("_id", System.getenv("bungee_id"));
@@ -232,6 +130,13 @@ public class MineCloudPlugin extends Plugin {
             getProxy().stop(); // bye bye
         }), 2, 2, TimeUnit.SECONDS);
 
+        getProxy().getScheduler().schedule(this, () -> getProxy().getScheduler().runAsync(this, () -> {
+            Map<UUID, String> players = new HashMap<>();
+
+            getProxy().getPlayers().forEach((player) -> players.put(player.getUniqueId(), player.getName()));
+            presence.refresh(players);
+        }), PlayerPresence.REFRESH_INTERVAL, PlayerPresence.REFRESH_INTERVAL, TimeUnit.SECONDS);
+
         BungeeType type = bungee().type();
 
         File nContainer = new File("nplugins/");
@@ -277,13 +182,26 @@ public class MineCloudPlugin extends Plugin {
         getProxy().getScheduler().schedule(this, () -> {
             this.redis.connected(); //Checks for Redis death, if it's dead it will reconnect.
 
-            ServerRepository repository = mongo.repositoryBy(Server.class);
-            List<Server> servers = repository.find(repository.createQuery()
-                    .field("network").equal(bungee().network()))
-                    .asList();
+            registry = RegistryFollower.create(ServerRegistry.create(redis, bungee().network().name()), new RegistryListener() {
+                @Override
+                public void added(String server, String host, int port) {
+                    ServerInfo info = getProxy().constructServerInfo(server, new InetSocketAddress(host, port), "", false);
 
-            servers.removeIf((s) -> s.port() == -1);
-            servers.forEach(this::addServer);
+                    getProxy().getServers().put(server, info);
+                    getLogger().log(Level.INFO, "Began tracking {0} - {1}:{2}", new Object[] {
+                            server, host, String.valueOf(port)
+                    });
+                }
+
+                @Override
+                public void removed(String server) {
+                    if (getProxy().getServers().remove(server) != null) {
+                        getLogger().log(Level.INFO, "Stopped tracking {0}", new Object[] {
+                                server
+                        });
+                    }
+                }
+            }).start(redis);
 
             getProxy().setReconnectHandler(new ReconnectHandler(this));
             getProxy().getPluginManager().registerListener(this, new MineCloudListener(this));
@@ -307,12 +225,87 @@ public class MineCloudPlugin extends Plugin {
 
     @Override
     public void onDisable() {
-        serverTypeCache.invalidateAll();
         serverCache.invalidateAll();
 
+        heartbeat.cancel(false);
+
+        if (registry != null) {
+            registry.stop();
+        }
+
+        heartbeats.remove(System.getenv("bungee_id"));
+        getProxy().getPlayers().forEach((player) ->
+                presence.leftProxy(player.getUniqueId(), player.getName(), System.getenv("bungee_id")));
         mongo.repositoryBy(Bungee.class).deleteById(System.getenv("bungee_id"));
     }
 
+    private void teleport(Teleport msg) {
+        String playerName = msg.player();
+        String serverName = msg.server();
+
+        ProxiedPlayer player = getProxy().getPlayer(playerName);
+        ServerInfo info = getProxy().getServerInfo(serverName);
+
+        if (player == null) {
+            return;
+        }
+
+        if (info == null) {
+            Server server = serverCache.getUnchecked(serverName);
+            if (server != null) {
+                info = addIfNotExist(server);
+            }
+        }
+
+        player.connect(info, (result, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Failed to move {0} to {1}: {2}", new Object[] {
+                        playerName, serverName, Throwables.getStackTraceAsString(error)
+                });
+            }
+        });
+    }
+
+    private void teleportType(TeleportType msg) {
+        String playerName = msg.player();
+        String typeName = msg.type();
+
+        ProxiedPlayer player = getProxy().getPlayer(playerName);
+        if (player == null) {
+            return;
+        }
+
+        ServerType type = mongo.repositoryBy(ServerType.class).findFirst(typeName);
+        if (type == null ) {
+            getLogger().log(Level.WARNING, "Received teleport message with an invalid server type");
+            return;
+        }
+
+        ServerRepository repository = mongo.repositoryBy(Server.class);
+        List<Server> servers = repository.createQuery()
+                .field("network").equal(bungee().network())
+                .field("ramUsage").notEqual(-1)
+                .field("port").notEqual(-1)
+                .field("type").equal(type)
+                .asList();
+
+        if (servers.size() > 1) {
+            Map<String, Integer> players = repository.playerCounts(servers);
+
+            Collections.sort(servers, (a, b) -> players.get(a.name()) - players.get(b.name()));
+        }
+
+        Server server = servers.get(0);
+        ServerInfo info = addIfNotExist(server);
+        player.connect(info, (result, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Failed to move {0} to {1}: {2}", new Object[] {
+                        playerName, server.name(), Throwables.getStackTraceAsString(error)
+                });
+            }
+        });
+    }
+
     private boolean validateFolder(File file, PluginType pluginType, String version) {
         if (!file.exists()) {
             getLogger().info(file.getPath() + " does not exist! Cannot load " + pluginType.name());
@@ -354,7 +347,7 @@ public class MineCloudPlugin extends Plugin {
     public ServerInfo addIfNotExist(Server server) {
         ServerInfo info = getProxy().getServerInfo(server.name());
         if (info == null) {
-            info = getProxy().constructServerInfo(server.name(), new InetSocketAddress(server.node().privateIp(), server.port()), "", false);
+            info = getProxy().constructServerInfo(server.name(), new InetSocketAddress(server.nodeSnapshot().privateIp(), server.port()), "", false);
             getProxy().getServers().put(info.getName(), info);
             getLogger().log(Level.INFO, "Began tracking {0} - {1}:{2}", new Object[] {
                     info.getName(), InetAddresses.toAddrString(info.getAddress().getAddress()), String.valueOf(info.getAddress().getPort())
@@ -24,9 +24,18 @@ import net.md_5.bungee.api.connection.ProxiedPlayer;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
 
 public class ReconnectHandler extends AbstractReconnectHandler {
     private MineCloudPlugin plugin;
+    private volatile List<Server> servers = Collections.emptyList();
+    private volatile long lastUpdated = 0;
+    private CompletableFuture<List<Server>> refreshing;
 
     ReconnectHandler(MineCloudPlugin plugin) {
         this.plugin = plugin;
@@ -37,17 +46,11 @@ public class ReconnectHandler extends AbstractReconnectHandler {
         ServerInfo info = ReconnectHandler.getForcedHost(proxiedPlayer.getPendingConnection());
 
         if (info == null) {
-            ServerRepository repository = plugin.mongo.repositoryBy(Server.class);
-            List<Server> servers = repository.find(repository.createQuery()
-                    .field("network").equal(plugin.bungee().network())
-                    .field("ramUsage").notEqual(-1))
-                    .asList();
+            List<Server> servers = defaultServers();
 
-            servers.removeIf((s) -> !s.type().defaultServer());
-
-            Collections.sort(servers, (a, b) -> a.onlinePlayers().size() - b.onlinePlayers().size());
-
-            info = plugin.getProxy().getServerInfo(servers.get(0).name());
+            if (!servers.isEmpty()) {
+                info = plugin.getProxy().getServerInfo(servers.get(0).name());
+            }
         }
 
         if (info == null) {
@@ -57,6 +60,49 @@ public class ReconnectHandler extends AbstractReconnectHandler {
         return info;
     }
 
+    /*
+     * Candidates are refreshed in the background, least players first, only the very first login waits for them
+     */
+    private List<Server> defaultServers() {
+        CompletableFuture<List<Server>> refresh = (System.currentTimeMillis() - lastUpdated) >= 1000L ? refresh() : null;
+
+        if (lastUpdated == 0 && refresh != null) {
+            try {
+                return refresh.get(5, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+                plugin.getLogger().log(Level.WARNING, "Was unable to load the default servers", ex);
+                return Collections.emptyList();
+            }
+        }
+
+        return servers;
+    }
+
+    private synchronized CompletableFuture<List<Server>> refresh() {
+        if (refreshing != null && !refreshing.isDone()) {
+            return refreshing;
+        }
+
+        ServerRepository repository = plugin.mongo.repositoryBy(Server.class);
+
+        refreshing = repository.findAsync(repository.criteria()
+                .where("network").equal(plugin.bungee().network())
+                .where("ramUsage").notEqual(-1))
+                .thenApply((servers) -> {
+                    servers.removeIf((s) -> !s.typeSnapshot().defaultServer());
+
+                    Map<String, Integer> players = repository.playerCounts(servers);
+
+                    servers.sort((a, b) -> players.get(a.name()) - players.get(b.name()));
+
+                    this.servers = servers;
+                    this.lastUpdated = System.currentTimeMillis();
+                    return servers;
+                });
+
+        return refreshing;
+    }
+
     @Override
     public void setServer(ProxiedPlayer proxiedPlayer) {
 
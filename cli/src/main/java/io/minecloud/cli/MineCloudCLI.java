@@ -60,6 +60,15 @@ public final class MineCloudCLI {
 
         MineCloud.instance().initiateMongo(mongo);
 
+        if (properties.containsKey("redis-host")) {
+            Credentials redis = new Credentials(properties.getProperty("redis-host").split(";"),
+                    "",
+                    properties.getProperty("redis-password").toCharArray(),
+                    properties.getProperty("redis-master", ""));
+
+            MineCloud.instance().initiateRedis(redis);
+        }
+
         new MineCloudCLI();
     }
 }
@@ -33,7 +33,7 @@ public class BungeeTypeHandler extends AbstractHandler {
     BungeeTypeHandler(String name) {
         type = MineCloud.instance().mongo()
                 .repositoryBy(BungeeType.class)
-                .findFirst(name);
+                .findOne("_id", name); // a copy of its own, the cached entity is shared
 
         if (type == null) {
             System.out.println("Could not find type in database; creating new one...");
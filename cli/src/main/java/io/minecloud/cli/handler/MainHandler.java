@@ -17,6 +17,10 @@ package io.minecloud.cli.handler;
 
 import asg.cliche.Command;
 import asg.cliche.Param;
+import io.minecloud.MineCloud;
+import io.minecloud.metrics.MetricsReporter;
+
+import java.util.Map;
 
 public class MainHandler extends AbstractHandler {
     public MainHandler() {
@@ -52,4 +56,34 @@ public class MainHandler extends AbstractHandler {
     public void node(@Param(name = "name") String name) {
         enterShell(new NodeHandler(name), "node");
     }
+
+    @Command(name = "metrics")
+    public void metrics() {
+        metrics("");
+    }
+
+    @Command(name = "metrics")
+    public void metrics(@Param(name = "filter") String filter) {
+        if (MineCloud.instance().redis() == null) {
+            System.out.println("Redis is not configured, cannot read metrics");
+            return;
+        }
+
+        Map<String, Map<String, String>> instances = MetricsReporter.read(MineCloud.instance().redis());
+
+        if (instances.isEmpty()) {
+            System.out.println("No instance has reported metrics recently");
+            return;
+        }
+
+        instances.forEach((instance, metrics) -> {
+            System.out.println(instance + ":");
+
+            metrics.forEach((name, value) -> {
+                if (name.contains(filter)) {
+                    System.out.println("  " + name + " = " + value);
+                }
+            });
+        });
+    }
 }
@@ -32,7 +32,7 @@ public class NetworkTypeHandler extends AbstractHandler {
     NetworkTypeHandler(String name) {
         type = MineCloud.instance().mongo()
                 .repositoryBy(Network.class)
-                .findFirst(name);
+                .findOne("_id", name); // a copy of its own, the cached entity is shared
 
         if (type == null) {
             System.out.println("Could not find type in database; creating a new one...");
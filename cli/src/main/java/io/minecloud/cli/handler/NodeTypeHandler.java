@@ -31,7 +31,7 @@ public class NodeTypeHandler extends AbstractHandler {
     NodeTypeHandler(String name) {
         type = MineCloud.instance().mongo()
                 .repositoryBy(NodeType.class)
-                .findFirst(name);
+                .findOne("_id", name); // a copy of its own, the cached entity is shared
 
         if (type == null) {
             System.out.println("Could not find type in database; creating new one...");
@@ -36,7 +36,7 @@ public class ServerTypeHandler extends AbstractHandler {
 
         type = MineCloud.instance().mongo()
                 .repositoryBy(ServerType.class)
-                .findFirst(name);
+                .findOne("_id", name); // a copy of its own, the cached entity is shared
 
         if (type == null) {
             System.out.println("Could not find type in database; creating new one...");
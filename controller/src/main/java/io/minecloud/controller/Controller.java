@@ -18,6 +18,7 @@ package io.minecloud.controller;
 import io.minecloud.MineCloud;
 import io.minecloud.db.Credentials;
 import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.db.redis.HeartbeatRegistry;
 import io.minecloud.db.redis.RedisDatabase;
 import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
 import io.minecloud.models.bungee.Bungee;
@@ -33,7 +34,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.stream.IntStream;
 
 public class Controller {
@@ -52,6 +57,9 @@ public class Controller {
         redis.addChannel(SimpleRedisChannel.create("bungee-create", redis));
         redis.addChannel(SimpleRedisChannel.create("server-create", redis));
 
+        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(HeartbeatReaper.create(redis, mongo),
+                HeartbeatRegistry.TIMEOUT, HeartbeatRegistry.INTERVAL, TimeUnit.SECONDS);
+
         while (!Thread.currentThread().isInterrupted()) {
             this.redis.connected(); //Checks for Redis death, if it's dead it will reconnect.
 
@@ -72,19 +80,15 @@ public class Controller {
                                 .filter((server) -> server.ramUsage() != -1 && server.port() == -1)
                                 .forEach((server) -> mongo.repositoryBy(Server.class).delete(server));
 
+                        ServerRepository repository = mongo.repositoryBy(Server.class);
+                        Map<String, Integer> serverCounts = repository.countByType(network);
+                        Map<String, Integer> playerCounts = repository.onlinePlayersByType(network);
+
                         network.serverMetadata().forEach((metadata) -> {
-                            int serversOnline = network.serversOnline(metadata.type());
+                            int serversOnline = serverCounts.getOrDefault(metadata.type().name(), 0);
 
                             int space = metadata.type().maxPlayers() * serversOnline;
-                            ServerRepository repository = mongo.repositoryBy(Server.class);
-
-                            List<Server> servers = repository.find(repository.createQuery()
-                                    .field("type").equal(metadata.type())
-                                    .field("network").equal(network))
-                                    .asList();
-                            int onlinePlayers = servers.stream()
-                                    .flatMapToInt((s) -> IntStream.of(s.onlinePlayers().size()))
-                                    .sum();
+                            int onlinePlayers = playerCounts.getOrDefault(metadata.type().name(), 0);
                             int scaledServers = onlinePlayers > (space * 0.75) ?
                                     (int) Math.floor(onlinePlayers / (space * 0.75)) + 1 :
                                     0;
@@ -94,8 +98,8 @@ public class Controller {
                                 requiredServers = 0;
                             }
 
-                            if ((scaledServers + requiredServers + servers.size()) > metadata.maximumAmount()) {
-                                requiredServers = metadata.maximumAmount() - servers.size();
+                            if ((scaledServers + requiredServers + serversOnline) > metadata.maximumAmount()) {
+                                requiredServers = metadata.maximumAmount() - serversOnline;
                                 scaledServers = 0;
                             }
 
@@ -108,8 +112,16 @@ public class Controller {
                                             }
 
                                             ServerType type = metadata.type();
-                                            MineCloud.logger().info("Sent deploy message to " + network.deployServer(type).name() +
-                                                    " for server type " + type.name() + " on " + network.name());
+                                            network.requestServer(type).whenComplete((deployment, error) -> {
+                                                if (error != null) {
+                                                    MineCloud.logger().log(Level.WARNING, "Was unable to deploy server type " +
+                                                            type.name() + " on " + network.name(), error);
+                                                    return;
+                                                }
+
+                                                MineCloud.logger().info("Deployed " + deployment.name() + " on " +
+                                                        deployment.node() + ":" + deployment.port() + " for " + network.name());
+                                            });
                                         });
                             }
                         });
@@ -147,9 +159,10 @@ public class Controller {
                 properties.getProperty("mongo-username"),
                 properties.getProperty("mongo-password").toCharArray(),
                 properties.getProperty("mongo-database"));
-        Credentials redis = new Credentials(new String[] {properties.getProperty("redis-host")},
+        Credentials redis = new Credentials(properties.getProperty("redis-host").split(";"),
                 "",
-                properties.getProperty("redis-password").toCharArray());
+                properties.getProperty("redis-password").toCharArray(),
+                properties.getProperty("redis-master", ""));
 
         MineCloud.instance().initiateMongo(mongo);
         MineCloud.instance().initiateRedis(redis);
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.controller;
+
+import io.minecloud.MineCloud;
+import io.minecloud.db.mongo.AbstractMongoRepository;
+import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.db.redis.HeartbeatRegistry;
+import io.minecloud.db.redis.RedisDatabase;
+import io.minecloud.db.redis.msg.types.BungeeKill;
+import io.minecloud.db.redis.msg.types.ServerKill;
+import io.minecloud.db.redis.registry.ServerRegistry;
+import io.minecloud.models.bungee.Bungee;
+import io.minecloud.models.server.Server;
+
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Removes servers and bungees which stopped sending heartbeats from the db, which frees their capacity for the
+ * next scaling pass, and tells their daemon to kill whatever is left of them
+ */
+public final class HeartbeatReaper implements Runnable {
+    private final RedisDatabase redis;
+    private final MongoDatabase mongo;
+    private final HeartbeatRegistry servers;
+    private final HeartbeatRegistry bungees;
+    private final HeartbeatRegistry nodes;
+
+    private HeartbeatReaper(RedisDatabase redis, MongoDatabase mongo) {
+        this.redis = redis;
+        this.mongo = mongo;
+        this.servers = HeartbeatRegistry.create(redis, HeartbeatRegistry.SERVERS);
+        this.bungees = HeartbeatRegistry.create(redis, HeartbeatRegistry.BUNGEES);
+        this.nodes = HeartbeatRegistry.create(redis, HeartbeatRegistry.NODES);
+    }
+
+    public static HeartbeatReaper create(RedisDatabase redis, MongoDatabase mongo) {
+        return new HeartbeatReaper(redis, mongo);
+    }
+
+    @Override
+    public void run() {
+        try {
+            reap(servers, "server", this::reapServer);
+            reap(bungees, "bungee", this::reapBungee);
+
+            nodes.reapExpired().keySet().forEach((node) -> MineCloud.logger().warning("Node " + node
+                    + " sent no heartbeat in " + HeartbeatRegistry.TIMEOUT + "s, its daemon is down"));
+        } catch (Exception ex) {
+            MineCloud.logger().log(Level.WARNING, "Was unable to reap expired heartbeats", ex);
+        }
+    }
+
+    // every member is handled on its own, one which fails goes back into the set for the next pass
+    private void reap(HeartbeatRegistry registry, String kind, Consumer<String> reaper) {
+        registry.reapExpired().forEach((id, lastBeat) -> {
+            try {
+                reaper.accept(id);
+            } catch (Exception ex) {
+                MineCloud.logger().log(Level.WARNING, "Was unable to reap " + kind + " " + id + ", retrying next pass", ex);
+
+                try {
+                    registry.restore(id, lastBeat);
+                } catch (Exception restoreEx) {
+                    MineCloud.logger().log(Level.SEVERE, "Was unable to give back " + kind + " " + id, restoreEx);
+                }
+            }
+        });
+    }
+
+    private void reapServer(String id) {
+        AbstractMongoRepository<Server> repository = mongo.repositoryBy(Server.class);
+        Server server = repository.findFirst(id);
+
+        if (server == null) {
+            return;
+        }
+
+        // deleted last, so a retry after a failure still finds the server to kill
+        ServerRegistry.create(redis, server.network().name()).remove(server.name());
+        redis.channelBy("server-kill").publish(new ServerKill(server.nodeSnapshot().name(), server.name()));
+        repository.delete(server);
+        MineCloud.logger().warning("Reaped server " + server.name() + ", no heartbeat in "
+                + HeartbeatRegistry.TIMEOUT + "s");
+    }
+
+    private void reapBungee(String id) {
+        AbstractMongoRepository<Bungee> repository = mongo.repositoryBy(Bungee.class);
+        Bungee bungee = repository.findFirst(id);
+
+        if (bungee == null) {
+            return;
+        }
+
+        redis.channelBy("bungee-kill").publish(new BungeeKill(bungee.nodeSnapshot().name(), id));
+        repository.delete(bungee);
+        MineCloud.logger().warning("Reaped bungee " + id + ", no heartbeat in " + HeartbeatRegistry.TIMEOUT + "s");
+    }
+}
@@ -16,9 +16,16 @@
 package io.minecloud;
 
 import io.minecloud.db.Credentials;
+import io.minecloud.db.mongo.AbstractMongoRepository;
+import io.minecloud.db.mongo.CacheInvalidator;
+import io.minecloud.db.mongo.IndexManager;
 import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.db.mongo.MongoRepository;
 import io.minecloud.db.redis.RedisDatabase;
+import io.minecloud.db.redis.msg.Priority;
 import io.minecloud.db.redis.pubsub.RedisChannel;
+import io.minecloud.metrics.MetricRegistry;
+import io.minecloud.metrics.MetricsReporter;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.bungee.BungeeRepository;
 import io.minecloud.models.bungee.type.BungeeType;
@@ -52,11 +59,13 @@ import java.util.logging.Logger;
 public final class MineCloud {
     private static final MineCloud INSTANCE = new MineCloud();
     private static final Logger LOGGER = Logger.getLogger("MineCloud");
+    private static final MetricRegistry METRICS = new MetricRegistry();
 
     @Setter
     private MongoDatabase mongo;
     @Setter
     private RedisDatabase redis;
+    private MetricsReporter reporter;
 
     private MineCloud() {}
 
@@ -68,12 +77,16 @@ public final class MineCloud {
         return LOGGER;
     }
 
+    public static MetricRegistry metrics() {
+        return METRICS;
+    }
+
     public static void environmentSetup() {
         Credentials mongoCredentials = new Credentials(getenv("mongo_hosts").split(";"),
                 getenv("mongo_username"), getenv("mongo_password").toCharArray(),
                 getenv("mongo_database"));
-        Credentials redisCredentials = new Credentials(new String[] {getenv("redis_host")},
-                "", getenv("redis_password").toCharArray());
+        Credentials redisCredentials = new Credentials(getenv("redis_host").split(";"),
+                "", getenv("redis_password").toCharArray(), getenv("redis_master"));
 
         instance().initiateMongo(mongoCredentials);
         instance().initiateRedis(redisCredentials);
@@ -83,6 +96,7 @@ public final class MineCloud {
             if (service != null) {
                 service.shutdownNow();
             }
+            RedisChannel.getExecutor(Priority.HIGH).shutdownNow();
         }, "Minecloud Cleanup Thread"));
     }
 
@@ -179,6 +193,15 @@ public final class MineCloud {
         mongo.loadRepository(ServerRepository.create(mongo.datastore()), Server.class);
         mongo.loadRepository(PluginTypeRepository.create(mongo.datastore()), PluginType.class);
 
+        IndexManager.create(mongo).ensureIndexes();
+        backfillSnapshots();
+
+        for (String collection : System.getProperty("minecloud.write-behind", "").split(",")) {
+            mongo.repositories().stream()
+                    .filter((repository) -> repository.collectionName().equals(collection.trim()))
+                    .forEach((repository) -> ((AbstractMongoRepository<?>) repository).enableWriteBehind());
+        }
+
         try {
             Class<?> cls = Class.forName("org.mongodb.morphia.query.QueryValidator");
             Field log = cls.getDeclaredField("LOG");
@@ -195,9 +218,50 @@ public final class MineCloud {
         }
     }
 
+    /**
+     * Embeds the snapshots missing from documents saved before snapshots existed, which the rollups by type and
+     * node would otherwise group under no name
+     */
+    private void backfillSnapshots() {
+        if (!missingSnapshots(Server.class, "typeSnapshot", "nodeSnapshot")
+                && !missingSnapshots(Bungee.class, "typeSnapshot", "nodeSnapshot")
+                && !missingSnapshots(Node.class, "typeSnapshot")) {
+            return;
+        }
+
+        int refreshed = 0;
+
+        for (MongoRepository<?> repository : mongo.repositories()) {
+            refreshed += ((AbstractMongoRepository<?>) repository).refreshSnapshots();
+        }
+
+        logger().info("Embedded snapshots in " + refreshed + " documents");
+    }
+
+    private boolean missingSnapshots(Class<?> model, String... fields) {
+        for (String field : fields) {
+            if (mongo.datastore().createQuery(model).field(field).doesNotExist().countAll() > 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     public void initiateRedis(Credentials credentials) {
         redis = RedisDatabase.create(credentials);
 
         redis.setup();
+
+        if (reporter != null) {
+            reporter.stop();
+        }
+
+        reporter = MetricsReporter.create(redis, METRICS);
+        reporter.start();
+
+        if (mongo != null) {
+            CacheInvalidator.create(mongo, redis).start();
+        }
     }
 }
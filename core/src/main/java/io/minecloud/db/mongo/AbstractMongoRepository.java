@@ -16,18 +16,56 @@
 package io.minecloud.db.mongo;
 
 import com.mongodb.*;
+import io.minecloud.MineCloud;
+import io.minecloud.MineCloudException;
 import io.minecloud.db.mongo.model.MongoEntity;
+import io.minecloud.db.mongo.model.Snapshot;
+import io.minecloud.metrics.Counter;
 import org.mongodb.morphia.Datastore;
+import org.mongodb.morphia.DatastoreImpl;
+import org.mongodb.morphia.Key;
 import org.mongodb.morphia.dao.BasicDAO;
+import org.mongodb.morphia.mapping.MappedClass;
+import org.mongodb.morphia.mapping.MappedField;
+import org.mongodb.morphia.mapping.Mapper;
+import org.mongodb.morphia.mapping.cache.DefaultEntityCache;
+import org.mongodb.morphia.query.Query;
+import org.mongodb.morphia.query.UpdateOperations;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public abstract class AbstractMongoRepository<T extends MongoEntity> extends BasicDAO<T, String> implements MongoRepository<T> {
+    private static final Counter PREDICATE_FALLBACKS = MineCloud.metrics().counter("mongo.predicate-fallbacks");
+
     protected DBCollection collection;
+    private final boolean cacheable;
+    private volatile Map<String, T> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile Consumer<String> changeListener;
+    private volatile WriteBehindQueue writeBehind;
 
     protected AbstractMongoRepository(Class<T> entity, Datastore datastore) {
+        this(entity, datastore, false);
+    }
+
+    /**
+     * @param cacheable Whether {@link #findFirst(String)} may be served from memory once invalidation is set up,
+     *                  meant for configuration which changes rarely and is read constantly
+     */
+    protected AbstractMongoRepository(Class<T> entity, Datastore datastore, boolean cacheable) {
         super(entity, datastore);
+        this.cacheable = cacheable;
         collection = getCollection();
     }
 
@@ -36,9 +74,309 @@ public abstract class AbstractMongoRepository<T extends MongoEntity> extends Bas
         return collection.getName();
     }
 
+    /**
+     * Entities of a repository with its cache enabled are shared between every caller and must be treated as
+     * read-only; to change one, load it through {@link #findOne(String, Object)} and save it.
+     */
     @Override
     public T findFirst(String id) {
-        return findOne("_id", id);
+        Map<String, T> cache = this.cache;
+
+        if (cache == null || id == null) {
+            return findOne("_id", id);
+        }
+
+        T cached = cache.get(id);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        // loaded outside of the map so other keys are never blocked on the database
+        long generation = invalidations.get();
+        T loaded = findOne("_id", id);
+
+        if (loaded == null || invalidations.get() != generation) {
+            return loaded; // changed while loading, the next call reads it again
+        }
+
+        T raced = cache.putIfAbsent(id, loaded);
+
+        if (raced != null) {
+            return raced;
+        }
+
+        if (invalidations.get() != generation) {
+            cache.remove(id, loaded); // invalidated between the check and the put, which it may have missed
+        }
+
+        return loaded;
+    }
+
+    public boolean cacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Starts serving {@link #findFirst(String)} from memory, changes made through this repository invalidate
+     * the cache; see {@link #onChange(Consumer)} for the caches of the other instances. The cached entities
+     * are shared, callers must not modify them.
+     */
+    public void enableCache() {
+        if (!cacheable) {
+            throw new MineCloudException(collectionName() + " is not cacheable");
+        }
+
+        if (cache == null) {
+            cache = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * @param changeListener Called with the id of every entity saved, updated or deleted through this repository
+     */
+    public void onChange(Consumer<String> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Drops the cached entity, so it is read from the database next time
+     *
+     * @param id The id of the entity, or null to drop every entity
+     */
+    public void invalidate(String id) {
+        Map<String, T> cache = this.cache;
+
+        if (cache == null) {
+            return;
+        }
+
+        invalidations.incrementAndGet();
+
+        if (id == null) {
+            cache.clear();
+        } else {
+            cache.remove(id);
+        }
+    }
+
+    /**
+     * Buffers saves and field updates of the models of this repository, see {@link WriteBehindQueue}
+     */
+    public void enableWriteBehind() {
+        if (cacheable) {
+            throw new MineCloudException(collectionName() + " is cacheable, its writes must reach the database " +
+                    "before its caches are invalidated");
+        }
+
+        if (writeBehind == null) {
+            writeBehind = WriteBehindQueue.create(collection);
+        }
+    }
+
+    /**
+     * Writes the buffered writes now, if write-behind is enabled
+     */
+    public void flush() {
+        WriteBehindQueue queue = writeBehind;
+
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    @Override
+    public Key<T> save(T entity) {
+        WriteBehindQueue queue = writeBehind;
+        String id = entity.entityId();
+
+        if (queue == null || id == null) {
+            Key<T> key = super.save(entity);
+
+            changed(entity.entityId());
+            return key;
+        }
+
+        queue.replace(id, mapper().toDBObject(entity));
+        changed(id);
+        return new Key<>(getEntityClass(), id);
+    }
+
+    @Override
+    public WriteResult delete(T entity) {
+        discardPending(entity.entityId());
+
+        WriteResult result = super.delete(entity);
+
+        changed(entity.entityId());
+        return result;
+    }
+
+    @Override
+    public WriteResult deleteById(String id) {
+        discardPending(id);
+
+        WriteResult result = super.deleteById(id);
+
+        changed(id);
+        return result;
+    }
+
+    private void discardPending(String id) {
+        WriteBehindQueue queue = writeBehind;
+
+        if (queue != null && id != null) {
+            queue.discard(id);
+        }
+    }
+
+    private Mapper mapper() {
+        return ((DatastoreImpl) getDatastore()).getMapper();
+    }
+
+    private void changed(String id) {
+        Consumer<String> listener = changeListener;
+
+        invalidate(id);
+
+        if (listener != null) {
+            listener.accept(id);
+        }
+    }
+
+    public Criteria<T> criteria() {
+        return Criteria.of(getEntityClass(), mapper());
+    }
+
+    @Override
+    public List<T> findAll(Criteria<T> criteria) {
+        List<T> models = find(criteria.apply(createQuery())).asList();
+        Predicate<T> residual = criteria.residual();
+
+        if (residual != null) {
+            PREDICATE_FALLBACKS.increment();
+            models.removeIf(residual.negate());
+        }
+
+        return models;
+    }
+
+    @Override
+    public Collection<T> findAll(Predicate<T> predicate) {
+        PREDICATE_FALLBACKS.increment();
+        return MongoRepository.super.findAll(predicate);
+    }
+
+    public long count(Criteria<T> criteria) {
+        if (criteria.residual() != null) {
+            return findAll(criteria).size();
+        }
+
+        return count(criteria.apply(createQuery()));
+    }
+
+    @Override
+    public CompletableFuture<T> findFirstAsync(String id) {
+        Map<String, T> cache = this.cache;
+        T cached = cache == null || id == null ? null : cache.get(id);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return MongoExecutor.supply(() -> findFirst(id));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> findAsync(Criteria<T> criteria) {
+        return MongoExecutor.supply(() -> findAll(criteria));
+    }
+
+    @Override
+    public CompletableFuture<String> saveAsync(T entity) {
+        return MongoExecutor.supply(() -> {
+            save(entity);
+            return entity.entityId();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> countAsync(Criteria<T> criteria) {
+        return MongoExecutor.supply(() -> count(criteria));
+    }
+
+    /**
+     * Loads lean views of the models matching the criteria, only the fields declared by the view are read
+     * from the database. Views are mapped like models, and may embed snapshots or declare the @Id.
+     */
+    public <V> List<V> project(Criteria<T> criteria, Class<V> view) {
+        DBObject fields = new BasicDBObject();
+        Mapper mapper = mapper();
+        List<V> views = new ArrayList<>();
+
+        for (MappedField field : mapper.getMappedClass(view).getPersistenceFields()) {
+            fields.put(field.getNameToStore(), 1);
+        }
+
+        try (DBCursor cursor = collection.find(pushdown(criteria).getQueryObject(), fields)) {
+            for (DBObject object : cursor) {
+                views.add(mapper.fromDBObject(view, object, new DefaultEntityCache()));
+            }
+        }
+
+        return views;
+    }
+
+    /**
+     * Counts the models matching the criteria by the value of the field, in one aggregation
+     *
+     * @param field Path of the field to group by, such as nodeSnapshot.name
+     */
+    public Map<String, Integer> countBy(Criteria<T> criteria, String field) {
+        return group(criteria, field, 1);
+    }
+
+    /**
+     * Sums the value field of the models matching the criteria by the value of the group field, in one aggregation
+     */
+    public Map<String, Integer> sumBy(Criteria<T> criteria, String field, String valueField) {
+        return group(criteria, field, "$" + valueField);
+    }
+
+    /**
+     * Runs the aggregation pipeline on the collection of this repository
+     */
+    public List<DBObject> aggregate(DBObject... pipeline) {
+        List<DBObject> results = new ArrayList<>();
+
+        collection.aggregate(Arrays.asList(pipeline)).results().forEach(results::add);
+        return results;
+    }
+
+    /**
+     * Sums the value, a constant or an aggregation expression, of the models matching the criteria
+     * by the value of the field
+     */
+    protected Map<String, Integer> group(Criteria<T> criteria, String field, Object value) {
+        Map<String, Integer> groups = new HashMap<>();
+        List<DBObject> results = aggregate(
+                new BasicDBObject("$match", pushdown(criteria).getQueryObject()),
+                new BasicDBObject("$group", new BasicDBObject("_id", "$" + field)
+                        .append("value", new BasicDBObject("$sum", value))));
+
+        for (DBObject result : results) {
+            groups.put(String.valueOf(result.get("_id")), ((Number) result.get("value")).intValue());
+        }
+
+        return groups;
+    }
+
+    private Query<T> pushdown(Criteria<T> criteria) {
+        if (criteria.residual() != null) {
+            throw new MineCloudException("Criteria matching a predicate cannot be evaluated by the database");
+        }
+
+        return criteria.apply(createQuery());
     }
 
     @Override
@@ -51,6 +389,119 @@ public abstract class AbstractMongoRepository<T extends MongoEntity> extends Bas
         return find(createQuery().disableValidation()).asList();
     }
 
+    /**
+     * Sets only the provided fields of the document, leaving the others as they are in the database, so concurrent
+     * writers of different fields do not overwrite each other. Values are mapped the same way as by save.
+     *
+     * @param fields Values by field name
+     * @return Whether the document exists, always true with write-behind as the update is written later
+     */
+    public boolean updateFields(String id, Map<String, ?> fields) {
+        WriteBehindQueue queue = writeBehind;
+
+        if (queue != null) {
+            Map<String, Object> mapped = new HashMap<>();
+            MappedClass model = mapper().getMappedClass(getEntityClass());
+
+            fields.forEach((name, value) -> {
+                MappedField field = model.getMappedField(name);
+
+                mapped.put(name, field == null ? value : mapper().toMongoObject(field, model, value));
+            });
+
+            queue.set(id, mapped);
+            changed(id);
+            return true;
+        }
+
+        UpdateOperations<T> operations = createUpdateOperations();
+
+        fields.forEach(operations::set);
+        return update(id, operations);
+    }
+
+    /**
+     * Applies the operations, see {@link #createUpdateOperations()}, to the document of the provided id
+     *
+     * @return Whether the document exists
+     */
+    public boolean update(String id, UpdateOperations<T> operations) {
+        flush(); // buffered writes must not overwrite this update
+
+        boolean updated = update(createQuery().filter("_id", id), operations).getUpdatedCount() > 0;
+
+        changed(id);
+        return updated;
+    }
+
+    /**
+     * Appends the value to the array field of the document
+     *
+     * @return Whether the document exists
+     */
+    public boolean push(String id, String field, Object value) {
+        return update(id, createUpdateOperations().add(field, value));
+    }
+
+    /**
+     * Removes every element of the array field of the document matching the criteria,
+     * such as {"id": ...} for an array of embedded documents
+     *
+     * @return Whether the document exists
+     */
+    public boolean pull(String id, String field, DBObject criteria) {
+        flush();
+
+        WriteResult result = collection.update(new BasicDBObject("_id", id),
+                new BasicDBObject("$pull", new BasicDBObject(field, criteria)));
+
+        changed(id);
+        return result.getN() > 0;
+    }
+
+    /**
+     * Refreshes the snapshots of every entity of this repository, which also embeds them in documents saved
+     * before snapshots existed
+     *
+     * @return The amount of refreshed documents
+     */
+    public int refreshSnapshots() {
+        int refreshed = 0;
+
+        for (T entity : models()) {
+            refreshed += refreshSnapshots(entity);
+        }
+
+        return refreshed;
+    }
+
+    /**
+     * Refreshes the snapshots of the entity embedded in other models, of which there are none by default
+     *
+     * @return The amount of refreshed documents
+     */
+    protected int refreshSnapshots(T entity) {
+        return 0;
+    }
+
+    /**
+     * Replaces the embedded snapshot of the entity in every document of the dependent model referencing it,
+     * skipping the documents of which the snapshot is up to date
+     *
+     * @param reference The field of the dependent model referencing the entity
+     * @param field The field of the dependent model holding the snapshot
+     * @return The amount of refreshed documents
+     */
+    protected <D> int refreshSnapshots(Class<D> dependent, String reference, T entity, String field,
+                                       Snapshot snapshot) {
+        Datastore datastore = getDatastore();
+
+        return datastore.update(datastore.createQuery(dependent)
+                        .field(reference).equal(entity)
+                        .field(field + ".version").notEqual(snapshot.version()),
+                datastore.createUpdateOperations(dependent).set(field, snapshot)).getUpdatedCount();
+    }
+
     public Class<T> modelClass() {
         return (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
     }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.mongo;
+
+import io.minecloud.MineCloud;
+import io.minecloud.db.redis.RedisDatabase;
+import io.minecloud.db.redis.msg.types.CacheInvalidation;
+import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Keeps the caches of the cacheable repositories, see {@link AbstractMongoRepository#enableCache()}, of every instance
+ * coherent. Changes are broadcast on the cache-invalidation channel and every instance drops the changed entity,
+ * so the next read fetches it from the database. Every cache is dropped after losing the subscription, as
+ * invalidations published in the meantime are lost.
+ */
+public final class CacheInvalidator {
+    public static final String CHANNEL = "cache-invalidation";
+
+    private final Map<String, AbstractMongoRepository<?>> repositories = new ConcurrentHashMap<>();
+    private final MongoDatabase mongo;
+    private final RedisDatabase redis;
+    private SimpleRedisChannel channel;
+
+    private CacheInvalidator(MongoDatabase mongo, RedisDatabase redis) {
+        this.mongo = mongo;
+        this.redis = redis;
+    }
+
+    public static CacheInvalidator create(MongoDatabase mongo, RedisDatabase redis) {
+        return new CacheInvalidator(mongo, redis);
+    }
+
+    /**
+     * Subscribes to invalidations and enables the caches once subscribed, entities read before then
+     * are not cached as their invalidations could be missed
+     */
+    public CacheInvalidator start() {
+        channel = SimpleRedisChannel.create(CHANNEL, redis).addCallback(CacheInvalidation.class, this::invalidate);
+        channel.onResubscribe(this::invalidateAll);
+        redis.addChannel(channel);
+
+        for (MongoRepository<?> repository : mongo.repositories()) {
+            if (repository instanceof AbstractMongoRepository && ((AbstractMongoRepository<?>) repository).cacheable()) {
+                AbstractMongoRepository<?> cacheable = (AbstractMongoRepository<?>) repository;
+
+                cacheable.onChange((id) -> publish(cacheable.collectionName(), id));
+                repositories.put(cacheable.collectionName(), cacheable);
+            }
+        }
+
+        channel.subscribed().thenRun(() -> repositories.values().forEach(AbstractMongoRepository::enableCache));
+        return this;
+    }
+
+    private void publish(String collection, String id) {
+        try {
+            channel.publish(new CacheInvalidation(collection, id));
+        } catch (RuntimeException ex) {
+            MineCloud.logger().log(Level.WARNING, "Was unable to broadcast the change of " + collection + "/" + id, ex);
+        }
+    }
+
+    private void invalidate(CacheInvalidation invalidation) {
+        AbstractMongoRepository<?> repository = repositories.get(invalidation.collection());
+
+        if (repository != null) {
+            repository.invalidate(invalidation.id());
+        }
+    }
+
+    private void invalidateAll() {
+        repositories.values().forEach((repository) -> repository.invalidate(null));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.mongo;
+
+import org.mongodb.morphia.mapping.MappedClass;
+import org.mongodb.morphia.mapping.Mapper;
+import org.mongodb.morphia.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * Conditions on the fields of T, which are pushed down to Mongo as a query by
+ * {@link AbstractMongoRepository#findAll(Criteria)} so only the matching documents are loaded. Conditions are
+ * combined with and. Field names are validated against the mapping of the model when they are added, for
+ * paths into embedded documents such as "typeSnapshot.name" only the first segment is.
+ * </p>
+ *
+ * <pre>
+ * repository.findAll(repository.criteria()
+ *         .where("node").equal(node)
+ *         .where("port").notEqual(-1));
+ * </pre>
+ *
+ * Conditions which cannot be expressed as a query may be added through {@link #matching(Predicate)}, these are
+ * evaluated in Java on the documents matching the other conditions.
+ */
+public final class Criteria<T> {
+    private final List<Function<Query<T>, Query<T>>> conditions = new ArrayList<>();
+    private final MappedClass model;
+    private Predicate<T> residual;
+
+    private Criteria(MappedClass model) {
+        this.model = model;
+    }
+
+    public static <T> Criteria<T> of(Class<T> model, Mapper mapper) {
+        return new Criteria<>(mapper.getMappedClass(model));
+    }
+
+    /**
+     * @throws IllegalArgumentException If the model has no such field
+     */
+    public Field where(String field) {
+        int dot = field.indexOf('.');
+        String root = dot == -1 ? field : field.substring(0, dot);
+
+        if (model.getMappedField(root) == null && model.getMappedFieldByJavaField(root) == null) {
+            throw new IllegalArgumentException(model.getClazz().getSimpleName() + " has no field " + root);
+        }
+
+        return new Field(field);
+    }
+
+    /**
+     * Adds a condition evaluated in Java after the query, which counts as a fallback in the
+     * mongo.predicate-fallbacks metric
+     */
+    public Criteria<T> matching(Predicate<T> predicate) {
+        residual = residual == null ? predicate : residual.and(predicate);
+        return this;
+    }
+
+    public Query<T> apply(Query<T> query) {
+        for (Function<Query<T>, Query<T>> condition : conditions) {
+            query = condition.apply(query);
+        }
+
+        return query;
+    }
+
+    /**
+     * @return The conditions which are not pushed down, or null if every condition is
+     */
+    public Predicate<T> residual() {
+        return residual;
+    }
+
+    private Criteria<T> add(Function<Query<T>, Query<T>> condition) {
+        conditions.add(condition);
+        return this;
+    }
+
+    public final class Field {
+        private final String name;
+
+        private Field(String name) {
+            this.name = name;
+        }
+
+        public Criteria<T> equal(Object value) {
+            return add((query) -> query.field(name).equal(value));
+        }
+
+        public Criteria<T> notEqual(Object value) {
+            return add((query) -> query.field(name).notEqual(value));
+        }
+
+        public Criteria<T> greaterThan(Object value) {
+            return add((query) -> query.field(name).greaterThan(value));
+        }
+
+        public Criteria<T> greaterThanOrEqual(Object value) {
+            return add((query) -> query.field(name).greaterThanOrEq(value));
+        }
+
+        public Criteria<T> lessThan(Object value) {
+            return add((query) -> query.field(name).lessThan(value));
+        }
+
+        public Criteria<T> lessThanOrEqual(Object value) {
+            return add((query) -> query.field(name).lessThanOrEq(value));
+        }
+
+        public Criteria<T> in(Iterable<?> values) {
+            return add((query) -> query.field(name).in(values));
+        }
+
+        public Criteria<T> exists() {
+            return add((query) -> query.field(name).exists());
+        }
+
+        public Criteria<T> doesNotExist() {
+            return add((query) -> query.field(name).doesNotExist());
+        }
+
+        /**
+         * Matches documents of which the array field has an element matching every field of the example,
+         * such as {"id": ...} for an array of embedded documents
+         */
+        public Criteria<T> hasElement(Object example) {
+            return add((query) -> query.field(name).hasThisElement(example));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.mongo;
+
+import com.mongodb.DBCollection;
+import io.minecloud.MineCloud;
+import org.mongodb.morphia.Datastore;
+
+import java.util.logging.Level;
+
+/**
+ * Ensures the indexes declared through @Indexes on every model of a {@link MongoDatabase} exist. Indexes are built
+ * in the background, so ensuring them on a live cluster does not block the collections; creating an index which
+ * already exists is a no-op.
+ */
+public final class IndexManager {
+    private final MongoDatabase database;
+
+    private IndexManager(MongoDatabase database) {
+        this.database = database;
+    }
+
+    public static IndexManager create(MongoDatabase database) {
+        return new IndexManager(database);
+    }
+
+    public void ensureIndexes() {
+        for (Class<?> model : database.models()) {
+            ensureIndexes(model);
+        }
+    }
+
+    public void ensureIndexes(Class<?> model) {
+        Datastore datastore = database.datastore();
+        DBCollection collection = datastore.getCollection(model);
+        int before = collection.getIndexInfo().size();
+
+        try {
+            datastore.ensureIndexes(model, true);
+        } catch (RuntimeException ex) {
+            MineCloud.logger().log(Level.SEVERE, "Could not ensure the indexes of " + collection.getName(), ex);
+            return;
+        }
+
+        int created = collection.getIndexInfo().size() - before;
+
+        if (created > 0) {
+            MineCloud.logger().info("Created " + created + " indexes on " + collection.getName());
+        }
+    }
+}
@@ -51,6 +51,14 @@ public class MongoDatabase implements Database {
         repositories.put(cls, repository);
     }
 
+    public Collection<MongoRepository<?>> repositories() {
+        return Collections.unmodifiableCollection(repositories.values());
+    }
+
+    public Set<Class<?>> models() {
+        return Collections.unmodifiableSet(repositories.keySet());
+    }
+
     public DB db() {
         return database;
     }
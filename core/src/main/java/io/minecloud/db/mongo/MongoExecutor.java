@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.mongo;
+
+import io.minecloud.MineCloud;
+import io.minecloud.MineCloudException;
+import io.minecloud.metrics.Counter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Bounded pool which runs blocking Mongo calls on behalf of the async repository methods, so platform threads
+ * (Bukkit/BungeeCord schedulers and event threads, Redis subscribers) never park on the database.
+ * </p>
+ *
+ * Callbacks chained onto the returned futures run on the I/O threads; anything which touches the platform API
+ * has to be handed back to the platform scheduler. Once the queue is full further calls fail immediately
+ * instead of piling up behind a slow database.
+ */
+public final class MongoExecutor {
+    private static final int THREADS = Integer.getInteger("minecloud.mongo-io-threads", 8);
+    private static final int QUEUE_SIZE = Integer.getInteger("minecloud.mongo-io-queue", 1024);
+    private static final Counter REJECTED = MineCloud.metrics().counter("mongo.io.rejected");
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE), new ThreadFactory());
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+
+        MineCloud.metrics().gauge("mongo.io.active", EXECUTOR::getActiveCount);
+        MineCloud.metrics().gauge("mongo.io.queued", () -> EXECUTOR.getQueue().size());
+    }
+
+    private MongoExecutor() {
+    }
+
+    public static <V> CompletableFuture<V> supply(Supplier<V> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, EXECUTOR);
+        } catch (RejectedExecutionException ex) {
+            CompletableFuture<V> future = new CompletableFuture<>();
+
+            REJECTED.increment();
+            future.completeExceptionally(new MineCloudException("Mongo I/O queue is full (" + QUEUE_SIZE + " pending calls)", ex));
+            return future;
+        }
+    }
+
+    private static final class ThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, String.format("MineCloud - Mongo I/O Thread #%d", counter.incrementAndGet()));
+
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.bson.types.ObjectId;
 
 import java.util.Collection;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -38,6 +39,14 @@ public interface MongoRepository<T> {
 
     public T findFirst(String id);
 
+    /**
+     * Finds the models matching the criteria, which are evaluated by the database
+     */
+    public Collection<T> findAll(Criteria<T> criteria);
+
+    /**
+     * Loads every model to evaluate the predicate in Java, use {@link #findAll(Criteria)} where possible
+     */
     public default Collection<T> findAll(Predicate<T> predicate) {
         return models().stream().filter(predicate).collect(Collectors.toList());
     }
@@ -49,4 +58,16 @@ public interface MongoRepository<T> {
     public Collection<T> models();
 
     public DBCollection collection();
+
+    /*
+     * Non-blocking variants, the calls are run on the bounded pool of MongoExecutor
+     */
+
+    public CompletableFuture<T> findFirstAsync(String id);
+
+    public CompletableFuture<? extends Collection<T>> findAsync(Criteria<T> criteria);
+
+    public CompletableFuture<String> saveAsync(T entity);
+
+    public CompletableFuture<Long> countAsync(Criteria<T> criteria);
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import io.minecloud.MineCloud;
+import io.minecloud.metrics.Counter;
+import io.minecloud.metrics.Histogram;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * <p>
+ * Write-behind buffer of a collection, see {@link AbstractMongoRepository#enableWriteBehind()}. Writes to the same
+ * document within {@link #WINDOW} ms are coalesced into one, a later save replaces the pending writes and later
+ * fields are merged into them, and every pending document is written in one unordered bulk write. Pending writes
+ * are flushed on shutdown, retrying up to {@link #SHUTDOWN_ATTEMPTS} times before they are logged as lost.
+ * </p>
+ *
+ * Reads do not see pending writes, so only collections which are not read back right after a write should use it.
+ */
+public final class WriteBehindQueue {
+    public static final long WINDOW = Long.getLong("minecloud.write-behind-window", 100);
+    public static final int SHUTDOWN_ATTEMPTS = 3;
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "MineCloud - Write Behind Thread");
+
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<WriteBehindQueue> QUEUES = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> QUEUES.forEach(WriteBehindQueue::flushOnShutdown),
+                "MineCloud - Write Behind Flush Thread"));
+    }
+
+    private final Counter coalesced = MineCloud.metrics().counter("mongo.write-behind.coalesced");
+    private final Counter failed = MineCloud.metrics().counter("mongo.write-behind.failed");
+    private final Histogram batchSize = MineCloud.metrics().histogram("mongo.write-behind.batch-size");
+    private final Object flushLock = new Object();
+    private final DBCollection collection;
+    private Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    // ids discarded since the last batch was taken, whose failed writes must not come back
+    private final Set<String> discarded = new HashSet<>();
+    private ScheduledFuture<?> scheduled;
+
+    private WriteBehindQueue(DBCollection collection) {
+        this.collection = collection;
+    }
+
+    public static WriteBehindQueue create(DBCollection collection) {
+        WriteBehindQueue queue = new WriteBehindQueue(collection);
+
+        QUEUES.add(queue);
+        return queue;
+    }
+
+    /**
+     * Replaces the document, inserting it if it does not exist
+     */
+    public synchronized void replace(String id, DBObject document) {
+        PendingWrite write = pending.get(id);
+
+        discarded.remove(id);
+
+        if (write == null) {
+            pending.put(id, new PendingWrite(document, null));
+        } else {
+            write.replacement = document;
+            write.fields = null;
+            coalesced.increment();
+        }
+
+        schedule();
+    }
+
+    /**
+     * Sets the fields of the document, if it exists
+     *
+     * @param fields Mapped values by field path
+     */
+    public synchronized void set(String id, Map<String, Object> fields) {
+        PendingWrite write = pending.get(id);
+
+        discarded.remove(id);
+
+        if (write == null) {
+            pending.put(id, new PendingWrite(null, new BasicDBObject(fields)));
+        } else {
+            write.merge(fields);
+            coalesced.increment();
+        }
+
+        schedule();
+    }
+
+    /**
+     * Drops the pending writes of the document, done before deleting it so a flush does not recreate it.
+     * Waits for a flush in progress, so a write of the document which is already being sent lands before the delete.
+     */
+    public void discard(String id) {
+        synchronized (flushLock) {
+            synchronized (this) {
+                pending.remove(id);
+                discarded.add(id);
+            }
+        }
+    }
+
+    /**
+     * Writes every pending write now, blocking until they are written
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, PendingWrite> batch = take();
+
+            if (batch != null && !write(batch)) {
+                requeue(batch);
+            }
+        }
+    }
+
+    /**
+     * Flushes without handing failed writes back to the flusher, which does not outlive the shutdown
+     */
+    private void flushOnShutdown() {
+        synchronized (flushLock) {
+            Map<String, PendingWrite> batch = take();
+
+            if (batch == null) {
+                return;
+            }
+
+            for (int attempt = 1; attempt <= SHUTDOWN_ATTEMPTS; attempt++) {
+                if (write(batch)) {
+                    return;
+                }
+            }
+
+            failed.add(batch.size());
+
+            for (String id : batch.keySet()) {
+                MineCloud.logger().log(Level.SEVERE, "Lost the write-behind write of " + id + " to " +
+                        collection.getName() + " on shutdown");
+            }
+        }
+    }
+
+    /**
+     * @return The pending writes, which are no longer pending, or null if there are none
+     */
+    private synchronized Map<String, PendingWrite> take() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        Map<String, PendingWrite> batch = pending;
+
+        pending = new LinkedHashMap<>();
+        discarded.clear();
+        return batch;
+    }
+
+    /**
+     * Flushes and stops flushing on shutdown
+     */
+    public void close() {
+        QUEUES.remove(this);
+        flush();
+    }
+
+    private void schedule() {
+        if (scheduled == null) {
+            scheduled = FLUSHER.schedule(this::flush, WINDOW, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return False if the batch could not be sent and should be retried, writes the database rejected are dropped
+     */
+    private boolean write(Map<String, PendingWrite> batch) {
+        BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+
+        batch.forEach((id, write) -> {
+            DBObject query = new BasicDBObject("_id", id);
+
+            if (write.replacement != null) {
+                bulk.find(query).upsert().replaceOne(write.replacement);
+            } else {
+                bulk.find(query).updateOne(new BasicDBObject("$set", write.fields));
+            }
+        });
+
+        batchSize.record(batch.size());
+
+        try {
+            bulk.execute();
+            return true;
+        } catch (BulkWriteException ex) {
+            failed.add(ex.getWriteErrors().size());
+
+            for (BulkWriteError error : ex.getWriteErrors()) {
+                MineCloud.logger().log(Level.SEVERE, "Dropped a write-behind write to " + collection.getName() +
+                        ": " + error.getMessage());
+            }
+
+            return true;
+        } catch (MongoException ex) {
+            MineCloud.logger().log(Level.WARNING, "Was unable to flush " + batch.size() + " writes to " +
+                    collection.getName(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Puts failed writes back under the writes made since, so neither is lost: a newer replacement wins,
+     * newer fields are applied on top of the failed write
+     */
+    private synchronized void requeue(Map<String, PendingWrite> batch) {
+        batch.forEach((id, failed) -> {
+            if (discarded.contains(id)) {
+                return;
+            }
+
+            PendingWrite newer = pending.get(id);
+
+            if (newer == null) {
+                pending.put(id, failed);
+            } else if (newer.replacement == null) {
+                failed.merge(newer.fields);
+                pending.put(id, failed);
+            }
+        });
+
+        if (!pending.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private static final class PendingWrite {
+        private DBObject replacement;
+        private BasicDBObject fields;
+
+        private PendingWrite(DBObject replacement, BasicDBObject fields) {
+            this.replacement = replacement;
+            this.fields = fields;
+        }
+
+        private void merge(Map<String, Object> values) {
+            if (replacement == null) {
+                fields.putAll(values);
+                return;
+            }
+
+            values.forEach((path, value) -> {
+                DBObject document = replacement;
+                String[] parts = path.split("\\.");
+
+                for (int i = 0; i < parts.length - 1; i++) {
+                    Object child = document.get(parts[i]);
+
+                    if (!(child instanceof DBObject)) {
+                        child = new BasicDBObject();
+                        document.put(parts[i], child);
+                    }
+
+                    document = (DBObject) child;
+                }
+
+                document.put(parts[parts.length - 1], value);
+            });
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis;
+
+import io.minecloud.MineCloud;
+import io.minecloud.metrics.Counter;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * <p>
+ * Seen-set of idempotency keys, for dropping commands which are delivered more than once. Keys are remembered
+ * for the ttl, in a bounded set in memory and in Redis under dedupe:[scope]:[key], so repeats are recognized
+ * across reconnects, restarts and instances sharing the scope.
+ * </p>
+ *
+ * Commands run through {@link #once} are forgotten again when they fail, so a retry runs them again, and
+ * repeats of a command this instance ran get its result. If Redis is unreachable only the in-memory set
+ * is consulted, so commands are never dropped because of an outage.
+ */
+public final class DuplicateFilter {
+    private final RedisDatabase redis;
+    private final String prefix;
+    private final long ttl;
+    private final SeenSet seen;
+    private final Counter duplicates;
+
+    private DuplicateFilter(RedisDatabase redis, String scope, long ttl, int capacity) {
+        this.redis = redis;
+        this.prefix = "dedupe:" + scope + ":";
+        this.ttl = ttl;
+        this.seen = new SeenSet(capacity);
+        this.duplicates = MineCloud.metrics().counter("redis.dedupe." + scope + ".duplicates");
+    }
+
+    public static DuplicateFilter create(RedisDatabase redis, String scope, long ttl, TimeUnit unit, int capacity) {
+        return new DuplicateFilter(redis, scope, unit.toMillis(ttl), capacity);
+    }
+
+    /**
+     * Marks the key as seen, for commands which cannot fail; see {@link #once} otherwise
+     *
+     * @return Whether this is the first time the key was seen within the ttl; always true for null keys
+     */
+    public boolean firstSeen(String key) {
+        return key == null || claim(key, null) == null;
+    }
+
+    /**
+     * Runs the command unless the key was seen within the ttl
+     *
+     * @return Whether the command was run
+     */
+    public boolean once(String key, Runnable command) {
+        if (!firstSeen(key)) {
+            return false;
+        }
+
+        try {
+            command.run();
+            return true;
+        } catch (RuntimeException ex) {
+            forget(key);
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs the command unless the key was seen within the ttl. The key is forgotten if the command fails.
+     *
+     * @return The result of the command; for a repeat the result of its first run, or null if that
+     * did not run in this instance
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> once(String key, Supplier<CompletableFuture<T>> command) {
+        if (key == null) {
+            return command.get();
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Seen previous = claim(key, result);
+
+        if (previous != null) {
+            return (CompletableFuture<T>) previous.result;
+        }
+
+        try {
+            command.get().whenComplete((value, error) -> {
+                if (error != null) {
+                    forget(key);
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        } catch (RuntimeException ex) {
+            forget(key);
+            result.completeExceptionally(ex);
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes the key, so the next delivery of its command is run again
+     */
+    public void forget(String key) {
+        if (key == null) {
+            return;
+        }
+
+        synchronized (seen) {
+            seen.remove(key);
+        }
+
+        try {
+            redis.execute((jedis) -> jedis.del(prefix + key));
+        } catch (JedisException ex) {
+            MineCloud.logger().log(Level.WARNING, "Could not forget " + key + " in Redis", ex);
+        }
+    }
+
+    /**
+     * @return The entry of the key if it was seen before, null if the key is now claimed with the result
+     */
+    private Seen claim(String key, CompletableFuture<?> result) {
+        long now = System.currentTimeMillis();
+
+        synchronized (seen) {
+            Seen entry = seen.get(key);
+
+            if (entry != null && entry.expiry > now) {
+                duplicates.increment();
+                return entry;
+            }
+
+            seen.put(key, new Seen(now + ttl, result));
+        }
+
+        try {
+            if (redis.execute((jedis) -> jedis.set(prefix + key, "1", "NX", "PX", ttl)) == null) {
+                Seen remote = new Seen(now + ttl, null); // ran in another instance, or before a restart
+
+                synchronized (seen) {
+                    seen.put(key, remote);
+                }
+
+                duplicates.increment();
+                return remote;
+            }
+        } catch (JedisException ex) {
+            MineCloud.logger().log(Level.WARNING, "Could not check " + key + " for duplicates in Redis", ex);
+        }
+
+        return null;
+    }
+
+    private static final class Seen {
+        private final long expiry;
+        private final CompletableFuture<?> result;
+
+        private Seen(long expiry, CompletableFuture<?> result) {
+            this.expiry = expiry;
+            this.result = result;
+        }
+    }
+
+    private static final class SeenSet extends LinkedHashMap<String, Seen> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        private SeenSet(int capacity) {
+            super(capacity, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Seen> eldest) {
+            return size() > capacity;
+        }
+    }
+}
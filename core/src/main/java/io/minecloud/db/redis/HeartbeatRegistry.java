@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis;
+
+import io.minecloud.MineCloud;
+import redis.clients.jedis.Jedis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * <p>
+ * Liveness of servers, bungees and nodes, kept in the sorted set heartbeats:[kind] scored by the time of the
+ * last heartbeat of every member. Members beat every {@link #INTERVAL} seconds and are considered dead once
+ * they missed {@link #TIMEOUT} seconds of beats, so finding dead members is a range query over the oldest scores.
+ * </p>
+ *
+ * Scores are the wall clock of the beating instance, clocks of the cluster are expected to be in sync
+ * to well within the timeout.
+ */
+public final class HeartbeatRegistry {
+    public static final String SERVERS = "servers";
+    public static final String BUNGEES = "bungees";
+    public static final String NODES = "nodes";
+    /**
+     * Seconds between two heartbeats of a member
+     */
+    public static final int INTERVAL = 2;
+    /**
+     * Seconds without heartbeat after which a member is dead
+     */
+    public static final int TIMEOUT = Integer.getInteger("minecloud.heartbeat-timeout", INTERVAL * 5);
+
+    // claims expired members by removing them in the same step, so only one reaper acts on each
+    private static final String REAP_SCRIPT =
+            "local expired = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, ARGV[2]) " +
+            "for i = 1, #expired, 2 do redis.call('zrem', KEYS[1], expired[i]) end " +
+            "return expired";
+    // puts a claimed member back unless it has beaten since
+    private static final String RESTORE_SCRIPT =
+            "if redis.call('zscore', KEYS[1], ARGV[2]) then return 0 end " +
+            "return redis.call('zadd', KEYS[1], ARGV[1], ARGV[2])";
+    private static final int REAP_BATCH = 500;
+    private static final ScheduledExecutorService BEATS = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "MineCloud - Heartbeat Thread");
+
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RedisDatabase redis;
+    private final String key;
+
+    private HeartbeatRegistry(RedisDatabase redis, String kind) {
+        this.redis = redis;
+        this.key = "heartbeats:" + kind;
+    }
+
+    public static HeartbeatRegistry create(RedisDatabase redis, String kind) {
+        return new HeartbeatRegistry(redis, kind);
+    }
+
+    public void beat(String id) {
+        redis.execute((jedis) -> jedis.zadd(key, System.currentTimeMillis(), id));
+    }
+
+    /**
+     * Beats on the heartbeat thread, for callers which must not block such as the main thread of a server
+     */
+    public void beatAsync(String id) {
+        BEATS.execute(() -> tryBeat(id));
+    }
+
+    /**
+     * Beats every {@link #INTERVAL} seconds until the returned future is cancelled
+     */
+    public ScheduledFuture<?> beatPeriodically(String id) {
+        return BEATS.scheduleAtFixedRate(() -> tryBeat(id), 0, INTERVAL, TimeUnit.SECONDS);
+    }
+
+    private void tryBeat(String id) {
+        try {
+            beat(id);
+        } catch (Exception ex) {
+            MineCloud.logger().log(Level.WARNING, "Could not send heartbeat of " + id, ex);
+        }
+    }
+
+    public void remove(String id) {
+        redis.execute((jedis) -> jedis.zrem(key, id));
+    }
+
+    /**
+     * @return Time of the last heartbeat of the member in millis, or -1 if it is not registered
+     */
+    public long lastBeat(String id) {
+        try (Jedis jedis = redis.grabReadResource()) {
+            Double score = jedis.zscore(key, id);
+
+            return score == null ? -1 : score.longValue();
+        }
+    }
+
+    public boolean alive(String id) {
+        return lastBeat(id) > cutoff();
+    }
+
+    /**
+     * Removes every member which has not beaten within the {@link #TIMEOUT}. Concurrent callers never
+     * get the same member; a member the caller fails to handle should be given back through {@link #restore}.
+     *
+     * @return The ids of the removed members, to the time of their last heartbeat
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Long> reapExpired() {
+        Object reply = redis.execute((jedis) -> jedis.eval(REAP_SCRIPT, Collections.singletonList(key),
+                Arrays.asList(String.valueOf(cutoff()), String.valueOf(REAP_BATCH))));
+        List<String> expired = reply == null ? Collections.emptyList() : (List<String>) reply;
+        Map<String, Long> members = new LinkedHashMap<>();
+
+        for (int i = 0; i + 1 < expired.size(); i += 2) {
+            members.put(expired.get(i), (long) Double.parseDouble(expired.get(i + 1)));
+        }
+
+        return members;
+    }
+
+    /**
+     * Puts a reaped member back with the time of its last heartbeat, so the next reap claims it again
+     */
+    public void restore(String id, long lastBeat) {
+        redis.execute((jedis) -> jedis.eval(RESTORE_SCRIPT, Collections.singletonList(key),
+                Arrays.asList(String.valueOf(lastBeat), id)));
+    }
+
+    private static long cutoff() {
+        return System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(TIMEOUT);
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis;
+
+import io.minecloud.models.nodes.CoreMetadata;
+import io.minecloud.models.player.PlayerData;
+import org.json.JSONObject;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Telemetry which changes every second or on every join, kept in Redis instead of the documents of the servers
+ * and nodes so Mongo only takes writes of durable configuration. The accessors of {@link io.minecloud.models.server.Server}
+ * and {@link io.minecloud.models.nodes.Node} read it through here and fall back to the document if there is no live state.
+ * </p>
+ *
+ * Keys: live:server:[id] (hash of ramUsage and tps), live:server:[id]:players (hash of player id to
+ * {"name", "health", "maxHealth"}) and live:node:[name] (hash of availableRam and cores, as
+ * "frequency:usage" per core separated by commas). All expire {@link #TTL} seconds after the last update,
+ * so the state of a crashed instance goes away on its own.
+ */
+public final class LiveState {
+    public static final int TTL = Integer.getInteger("minecloud.live-state-ttl", 30);
+    /**
+     * Milliseconds a model keeps the live state it fetched
+     */
+    public static final long LIFETIME = 1000;
+
+    private final RedisDatabase redis;
+
+    private LiveState(RedisDatabase redis) {
+        this.redis = redis;
+    }
+
+    public static LiveState create(RedisDatabase redis) {
+        return new LiveState(redis);
+    }
+
+    public void updateServer(String id, int ramUsage, double tps, Collection<PlayerData> players) {
+        String key = serverKey(id);
+        String playersKey = playersKey(id);
+
+        redis.execute((jedis) -> {
+            Pipeline pipeline = jedis.pipelined();
+
+            pipeline.multi();
+            pipeline.hset(key, "ramUsage", String.valueOf(ramUsage));
+            pipeline.hset(key, "tps", String.valueOf(tps));
+            pipeline.expire(key, TTL);
+            pipeline.del(playersKey);
+
+            if (!players.isEmpty()) {
+                Map<String, String> encoded = new HashMap<>();
+
+                players.forEach((player) -> encoded.put(player.uuid(), encode(player)));
+                pipeline.hmset(playersKey, encoded);
+                pipeline.expire(playersKey, TTL);
+            }
+
+            pipeline.exec();
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    public void addPlayer(String server, PlayerData player) {
+        String key = playersKey(server);
+
+        redis.execute((jedis) -> {
+            Pipeline pipeline = jedis.pipelined();
+
+            pipeline.hset(key, player.uuid(), encode(player));
+            pipeline.expire(key, TTL);
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    public void removePlayer(String server, UUID player) {
+        redis.execute((jedis) -> jedis.hdel(playersKey(server), player.toString()));
+    }
+
+    public void removeServer(String id) {
+        redis.execute((jedis) -> jedis.del(serverKey(id), playersKey(id)));
+    }
+
+    /**
+     * @return The live state of the server, or null if there is none
+     */
+    public ServerState server(String id) {
+        return redis.execute((jedis) -> {
+            Pipeline pipeline = jedis.pipelined();
+            Response<Map<String, String>> state = pipeline.hgetAll(serverKey(id));
+            Response<Map<String, String>> players = pipeline.hgetAll(playersKey(id));
+
+            pipeline.sync();
+
+            if (state.get() == null || state.get().isEmpty()) {
+                return null;
+            }
+
+            List<PlayerData> decoded = new ArrayList<>();
+
+            players.get().forEach((playerId, value) -> decoded.add(decode(playerId, value)));
+            return new ServerState(Integer.parseInt(state.get().get("ramUsage")),
+                    Double.parseDouble(state.get().get("tps")), decoded);
+        });
+    }
+
+    /**
+     * Counts the players of every server in one round trip
+     *
+     * @return The amount of players by server, 0 for servers without live state
+     */
+    public Map<String, Integer> playerCounts(Collection<String> servers) {
+        if (servers.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        return redis.execute((jedis) -> {
+            Pipeline pipeline = jedis.pipelined();
+            Map<String, Response<Long>> responses = new HashMap<>();
+            Map<String, Integer> counts = new HashMap<>();
+
+            servers.forEach((id) -> responses.put(id, pipeline.hlen(playersKey(id))));
+            pipeline.sync();
+
+            responses.forEach((id, response) -> counts.put(id, response.get().intValue()));
+            return counts;
+        });
+    }
+
+    /**
+     * Reads the ram usage of every server in one round trip
+     *
+     * @return The ram usage by server, without the servers which have no live state
+     */
+    public Map<String, Integer> ramUsages(Collection<String> servers) {
+        if (servers.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        return redis.execute((jedis) -> {
+            Pipeline pipeline = jedis.pipelined();
+            Map<String, Response<String>> responses = new HashMap<>();
+            Map<String, Integer> usages = new HashMap<>();
+
+            servers.forEach((id) -> responses.put(id, pipeline.hget(serverKey(id), "ramUsage")));
+            pipeline.sync();
+
+            responses.forEach((id, response) -> {
+                if (response.get() != null) {
+                    usages.put(id, Integer.parseInt(response.get()));
+                }
+            });
+            return usages;
+        });
+    }
+
+    public void updateNode(String name, double availableRam, List<CoreMetadata> cores) {
+        String key = nodeKey(name);
+        StringBuilder encoded = new StringBuilder();
+
+        for (CoreMetadata core : cores) {
+            if (encoded.length() > 0) {
+                encoded.append(',');
+            }
+
+            encoded.append(core.currentFrequency()).append(':').append(core.usage());
+        }
+
+        redis.execute((jedis) -> {
+            Pipeline pipeline = jedis.pipelined();
+
+            pipeline.hset(key, "availableRam", String.valueOf(availableRam));
+            pipeline.hset(key, "cores", encoded.toString());
+            pipeline.expire(key, TTL);
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    /**
+     * @return The live state of the node, or null if there is none
+     */
+    public NodeState node(String name) {
+        Map<String, String> state = redis.execute((jedis) -> jedis.hgetAll(nodeKey(name)));
+
+        if (state == null || state.isEmpty()) {
+            return null;
+        }
+
+        List<CoreMetadata> cores = new ArrayList<>();
+
+        for (String core : state.get("cores").split(",")) {
+            if (core.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = core.split(":");
+            CoreMetadata metadata = new CoreMetadata();
+
+            metadata.setCurrentFrequency(Double.parseDouble(parts[0]));
+            metadata.setUsage(Double.parseDouble(parts[1]));
+            cores.add(metadata);
+        }
+
+        return new NodeState(Double.parseDouble(state.get("availableRam")), cores);
+    }
+
+    private static String encode(PlayerData player) {
+        return new JSONObject()
+                .put("name", player.name())
+                .put("health", player.health())
+                .put("maxHealth", player.maxHealth())
+                .toString();
+    }
+
+    private static PlayerData decode(String id, String value) {
+        JSONObject object = new JSONObject(value);
+        PlayerData player = new PlayerData();
+
+        player.setId(id);
+        player.setName(object.getString("name"));
+        player.setHealth(object.getDouble("health"));
+        player.setMaxHealth(object.getDouble("maxHealth"));
+        return player;
+    }
+
+    private static String serverKey(String id) {
+        return "live:server:" + id;
+    }
+
+    private static String playersKey(String id) {
+        return "live:server:" + id + ":players";
+    }
+
+    private static String nodeKey(String name) {
+        return "live:node:" + name;
+    }
+
+    public static final class ServerState {
+        private final int ramUsage;
+        private final double tps;
+        private final List<PlayerData> players;
+
+        private ServerState(int ramUsage, double tps, List<PlayerData> players) {
+            this.ramUsage = ramUsage;
+            this.tps = tps;
+            this.players = players;
+        }
+
+        public int ramUsage() {
+            return ramUsage;
+        }
+
+        public double tps() {
+            return tps;
+        }
+
+        public List<PlayerData> players() {
+            return players;
+        }
+    }
+
+    public static final class NodeState {
+        private final double availableRam;
+        private final List<CoreMetadata> cores;
+
+        private NodeState(double availableRam, List<CoreMetadata> cores) {
+            this.availableRam = availableRam;
+            this.cores = cores;
+        }
+
+        public double availableRam() {
+            return availableRam;
+        }
+
+        public List<CoreMetadata> cores() {
+            return cores;
+        }
+    }
+}
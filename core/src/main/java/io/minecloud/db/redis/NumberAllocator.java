@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Hands out the lowest free number of a group, such as the servers of a type, so concurrent deploys never
+ * receive the same one. Numbers in use are the set bits of the bitmap numbers:[group]; bit 0 is always set,
+ * so numbers start at 1.
+ * </p>
+ *
+ * The bitmap is seeded from the numbers in use when it does not exist, which covers the first deploy as
+ * well as a Redis which lost its data. A number which is never released only leaves a gap.
+ */
+public final class NumberAllocator {
+    // claims the first clear bit in the same step it is found, nil if the bitmap has to be seeded first
+    private static final String ALLOCATE_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then return nil end " +
+            "local number = redis.call('bitpos', KEYS[1], 0) " +
+            "redis.call('setbit', KEYS[1], number, 1) " +
+            "return number";
+    private static final String SEED_SCRIPT =
+            "redis.call('setbit', KEYS[1], 0, 1) " +
+            "for _, number in ipairs(ARGV) do redis.call('setbit', KEYS[1], number, 1) end " +
+            "return 1";
+
+    private final RedisDatabase redis;
+
+    private NumberAllocator(RedisDatabase redis) {
+        this.redis = redis;
+    }
+
+    public static NumberAllocator create(RedisDatabase redis) {
+        return new NumberAllocator(redis);
+    }
+
+    /**
+     * @param used The numbers currently in use, only called when the bitmap has to be seeded
+     */
+    public int allocate(String group, Supplier<Collection<Integer>> used) {
+        String key = key(group);
+
+        while (true) {
+            Object number = redis.execute((jedis) -> jedis.eval(ALLOCATE_SCRIPT, Collections.singletonList(key),
+                    Collections.emptyList()));
+
+            if (number != null) {
+                return ((Long) number).intValue();
+            }
+
+            List<String> numbers = new ArrayList<>();
+
+            for (int n : used.get()) {
+                numbers.add(String.valueOf(n));
+            }
+
+            redis.execute((jedis) -> jedis.eval(SEED_SCRIPT, Collections.singletonList(key), numbers));
+        }
+    }
+
+    public void release(String group, int number) {
+        if (number > 0) {
+            redis.execute((jedis) -> jedis.setbit(key(group), number, false));
+        }
+    }
+
+    private static String key(String group) {
+        return "numbers:" + group;
+    }
+}
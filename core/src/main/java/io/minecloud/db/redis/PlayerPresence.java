@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis;
+
+import redis.clients.jedis.Pipeline;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * <p>
+ * Where every online player of the cloud is: the hash player:[uuid] holds the name of the player, the bungee
+ * it is connected through (proxy) and the server it is on (server), and player-name:[lowercase name] maps
+ * names back to ids. Bungees set the proxy on login, servers set the server on join, and every instance
+ * clears its own field on quit, so a quit which arrives after the join on the next server is a no-op.
+ * </p>
+ *
+ * Entries expire {@link #TTL} seconds after they were last refreshed, so players of a crashed instance drop
+ * out on their own; instances refresh their online players every {@link #REFRESH_INTERVAL} seconds.
+ */
+public final class PlayerPresence {
+    public static final int TTL = Integer.getInteger("minecloud.presence-ttl", 60);
+    public static final int REFRESH_INTERVAL = TTL / 3;
+
+    // clears the field only if it still holds the value of the caller, the key goes away with its last field
+    private static final String LEAVE_SCRIPT =
+            "if redis.call('hget', KEYS[1], ARGV[1]) ~= ARGV[2] then return 0 end " +
+            "redis.call('hdel', KEYS[1], ARGV[1]) " +
+            "if redis.call('hexists', KEYS[1], 'proxy') == 0 and redis.call('hexists', KEYS[1], 'server') == 0 then " +
+            "redis.call('del', KEYS[1]) " +
+            "if redis.call('get', KEYS[2]) == ARGV[3] then redis.call('del', KEYS[2]) end end " +
+            "return 1";
+
+    private final RedisDatabase redis;
+
+    private PlayerPresence(RedisDatabase redis) {
+        this.redis = redis;
+    }
+
+    public static PlayerPresence create(RedisDatabase redis) {
+        return new PlayerPresence(redis);
+    }
+
+    public void joinedProxy(UUID id, String name, String proxy) {
+        join(id, name, "proxy", proxy);
+    }
+
+    public void leftProxy(UUID id, String name, String proxy) {
+        leave(id, name, "proxy", proxy);
+    }
+
+    public void joinedServer(UUID id, String name, String server) {
+        join(id, name, "server", server);
+    }
+
+    public void leftServer(UUID id, String name, String server) {
+        leave(id, name, "server", server);
+    }
+
+    private void join(UUID id, String name, String field, String value) {
+        String key = key(id);
+        String nameKey = nameKey(name);
+
+        redis.execute((jedis) -> {
+            Pipeline pipeline = jedis.pipelined();
+
+            pipeline.hset(key, field, value);
+            pipeline.hset(key, "name", name);
+            pipeline.expire(key, TTL);
+            pipeline.setex(nameKey, TTL, id.toString());
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    private void leave(UUID id, String name, String field, String value) {
+        redis.execute((jedis) -> jedis.eval(LEAVE_SCRIPT, Arrays.asList(key(id), nameKey(name)),
+                Arrays.asList(field, value, id.toString())));
+    }
+
+    /**
+     * Extends the presence of the provided players, by id to name, by another {@link #TTL} seconds
+     */
+    public void refresh(Map<UUID, String> players) {
+        if (players.isEmpty()) {
+            return;
+        }
+
+        redis.execute((jedis) -> {
+            Pipeline pipeline = jedis.pipelined();
+
+            players.forEach((id, name) -> {
+                pipeline.expire(key(id), TTL);
+                pipeline.expire(nameKey(name), TTL);
+            });
+
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    /**
+     * @return The name, proxy and server of the player, empty if the player is offline
+     */
+    public Map<String, String> presenceOf(UUID id) {
+        Map<String, String> presence = redis.execute((jedis) -> jedis.hgetAll(key(id)));
+
+        return presence == null ? Collections.emptyMap() : presence;
+    }
+
+    /**
+     * @return The name of the server the player is on, or null if the player is offline or between servers
+     */
+    public String serverOf(UUID id) {
+        return redis.execute((jedis) -> jedis.hget(key(id), "server"));
+    }
+
+    /**
+     * @return The id of the bungee the player is connected through, or null if the player is offline
+     */
+    public String proxyOf(UUID id) {
+        return redis.execute((jedis) -> jedis.hget(key(id), "proxy"));
+    }
+
+    /**
+     * @return The id of the bungee the player of the provided name is connected through, or null if the player is offline
+     */
+    public String proxyOf(String name) {
+        UUID id = idOf(name);
+
+        return id == null ? null : proxyOf(id);
+    }
+
+    /**
+     * @return The id of the online player with the provided name, case insensitive, or null if there is none
+     */
+    public UUID idOf(String name) {
+        String id = redis.execute((jedis) -> jedis.get(nameKey(name)));
+
+        return id == null ? null : UUID.fromString(id);
+    }
+
+    private static String key(UUID id) {
+        return "player:" + id;
+    }
+
+    private static String nameKey(String name) {
+        return "player-name:" + name.toLowerCase();
+    }
+}
@@ -18,24 +18,84 @@ package io.minecloud.db.redis;
 import io.minecloud.MineCloud;
 import io.minecloud.db.Credentials;
 import io.minecloud.db.Database;
+import io.minecloud.db.redis.msg.Compression;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.Priority;
 import io.minecloud.db.redis.pubsub.RedisChannel;
 import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
+import io.minecloud.db.redis.pubsub.SubscriptionManager;
+import io.minecloud.db.redis.rpc.RequestBroker;
+import io.minecloud.db.redis.rpc.RequestHandler;
+import io.minecloud.metrics.Counter;
+import io.minecloud.metrics.Histogram;
+import io.minecloud.metrics.MetricRegistry;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisSentinelPool;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Level;
 
+/**
+ * <p>
+ * Connection management for Redis. The hosts of the credentials are either a single master followed by optional
+ * replicas (host[:port];replica[:port]...) or, when the credentials name a database, the Sentinels monitoring the
+ * master of that name. With Sentinel the master is discovered on setup and followed across failovers, and the
+ * replicas Sentinel reports healthy are used for {@link #grabReadResource()}.
+ * </p>
+ *
+ * Commands run through {@link #execute(Function)} and publishes are retried with backoff while a master is
+ * unreachable. Subscriptions do not hold pooled connections, they share one dedicated connection which is
+ * reestablished once the master is back, see {@link SubscriptionManager}.
+ *
+ * The command pool is sized through the minecloud.redis-pool-size, minecloud.redis-pool-idle and
+ * minecloud.redis-pool-min-idle properties; borrowing waits at most minecloud.redis-pool-max-wait milliseconds.
+ */
 public final class RedisDatabase implements Database {
+    private static final int TIMEOUT = 1000;
+    private static final int DEFAULT_PORT = 6379;
+    private static final int DEFAULT_SENTINEL_PORT = 26379;
+    private static final int RETRIES = Integer.getInteger("minecloud.redis-retries", 4);
+    private static final long RETRY_BACKOFF = 100;
+    private static final long REPLICA_REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final int PRIORITY_CONNECTIONS = Integer.getInteger("minecloud.redis-priority-connections", 4);
+    private static final int POOL_SIZE = Integer.getInteger("minecloud.redis-pool-size", 20);
+    private static final int POOL_IDLE = Integer.getInteger("minecloud.redis-pool-idle", 10);
+    private static final int POOL_MIN_IDLE = Integer.getInteger("minecloud.redis-pool-min-idle", 3);
+    private static final long POOL_MAX_WAIT = Long.getLong("minecloud.redis-pool-max-wait", 2000);
+
     private final Map<String, RedisChannel> channels = new ConcurrentHashMap<>();
+    private final RequestBroker requests = RequestBroker.create(this);
+    private final SubscriptionManager subscriptions = SubscriptionManager.create(this);
     private final Credentials credentials;
-    private JedisPool pool;
+    private final long origin = originId();
+    private final Counter publishedBytes = MineCloud.metrics().counter("redis.published-bytes");
+    private final Counter retries = MineCloud.metrics().counter("redis.retries");
+    private final Counter readFallbacks = MineCloud.metrics().counter("redis.read-fallbacks");
+    private final Counter poolExhausted = MineCloud.metrics().counter("redis.pool.exhausted");
+    private final Histogram poolWait = MineCloud.metrics().histogram("redis.pool.wait-ns");
+    private final Histogram priorityPoolWait = MineCloud.metrics().histogram("redis.pool.priority.wait-ns");
+    private volatile Pool<Jedis> pool;
+    private volatile Pool<Jedis> priorityPool;
+    private volatile JedisPool readPool;
+    private volatile HostAndPort replica;
+    private volatile long replicasRefreshed;
 
     private RedisDatabase(Credentials credentials) {
         this.credentials = credentials;
+
+        registerMetrics();
     }
 
     public static RedisDatabase create(Credentials credentials) {
@@ -44,28 +104,193 @@ public final class RedisDatabase implements Database {
 
     @Override
     public void setup() {
+        Pool<Jedis> previous = pool;
+        Pool<Jedis> previousPriority = priorityPool;
+        JedisPoolConfig reserved = new JedisPoolConfig();
+
+        // kept open and out of reach of bulk traffic, see Priority
+        reserved.setMaxTotal(PRIORITY_CONNECTIONS);
+        reserved.setMaxIdle(PRIORITY_CONNECTIONS);
+        reserved.setMinIdle(PRIORITY_CONNECTIONS);
+        reserved.setMaxWaitMillis(POOL_MAX_WAIT);
+
+        pool = masterPool(poolConfig());
+        priorityPool = masterPool(reserved);
+
+        if (previous != null) {
+            previous.destroy();
+            previousPriority.destroy();
+        }
+
+        refreshReplicas();
+    }
+
+    private Pool<Jedis> masterPool(JedisPoolConfig config) {
+        if (sentinelMaster() != null) {
+            Set<String> sentinels = new HashSet<>();
+
+            for (String host : credentials.hosts()) {
+                HostAndPort sentinel = hostAndPort(host, DEFAULT_SENTINEL_PORT);
+
+                sentinels.add(sentinel.getHost() + ":" + sentinel.getPort());
+            }
+
+            return new JedisSentinelPool(sentinelMaster(), sentinels, config, TIMEOUT, password());
+        }
+
+        HostAndPort master = masterAddress();
+
+        return new JedisPool(config, master.getHost(), master.getPort(), TIMEOUT, password());
+    }
+
+    /**
+     * @return The address of the current master, as last reported by Sentinel when it is used
+     */
+    public HostAndPort masterAddress() {
+        Pool<Jedis> current = pool;
+
+        if (current instanceof JedisSentinelPool) {
+            return ((JedisSentinelPool) current).getCurrentHostMaster();
+        }
+
+        if (sentinelMaster() != null) {
+            throw new JedisConnectionException("The master has not been discovered yet");
+        }
+
+        return hostAndPort(credentials.hosts()[0], DEFAULT_PORT);
+    }
+
+    /**
+     * Opens a connection to the master outside of the pools, for connections which are held for long
+     * such as subscriptions. The caller is responsible for closing it.
+     *
+     * @param timeout Socket timeout in milliseconds, 0 to block reads indefinitely
+     */
+    public Jedis openConnection(int timeout) {
+        HostAndPort master = masterAddress();
+        Jedis jedis = new Jedis(master.getHost(), master.getPort(), timeout);
+
+        try {
+            if (password() != null) {
+                jedis.auth(password());
+            }
+        } catch (RuntimeException ex) {
+            jedis.close();
+            throw ex;
+        }
+
+        return jedis;
+    }
+
+    /**
+     * @return The name of the Sentinel monitored master, or null if Sentinel is not used
+     */
+    public String sentinelMaster() {
+        String master = credentials.database();
+
+        return master == null || master.isEmpty() ? null : master;
+    }
+
+    /**
+     * Picks a replica to serve reads, as reported healthy by Sentinel or as configured after the master.
+     * Falls back to reading from the master when there is none.
+     */
+    private synchronized void refreshReplicas() {
+        List<HostAndPort> replicas = sentinelMaster() != null ? sentinelReplicas() : configuredReplicas();
+        HostAndPort selected = replicas.isEmpty() ? null : replicas.get(new Random().nextInt(replicas.size()));
+        JedisPool previous = readPool;
+
+        replicasRefreshed = System.currentTimeMillis();
+
+        if (Objects.equals(selected, replica) && (previous != null || selected == null)) {
+            return;
+        }
+
+        JedisPoolConfig config = poolConfig();
+
+        config.setTestOnBorrow(true); // a dead replica should fall back to the master, not fail the read
+
+        replica = selected;
+        readPool = selected == null ? null : new JedisPool(config, selected.getHost(), selected.getPort(),
+                TIMEOUT, password());
+
+        if (previous != null) {
+            previous.destroy();
+        }
+
+        MineCloud.logger().info(selected == null ? "Reading from the Redis master, no replica is available" :
+                "Reading from Redis replica " + selected);
+    }
+
+    private List<HostAndPort> configuredReplicas() {
+        List<HostAndPort> replicas = new ArrayList<>();
+
+        for (int i = 1; i < credentials.hosts().length; i++) {
+            replicas.add(hostAndPort(credentials.hosts()[i], DEFAULT_PORT));
+        }
+
+        return replicas;
+    }
+
+    private List<HostAndPort> sentinelReplicas() {
+        List<HostAndPort> replicas = new ArrayList<>();
+
+        for (String host : credentials.hosts()) {
+            HostAndPort address = hostAndPort(host, DEFAULT_SENTINEL_PORT);
+
+            try (Jedis sentinel = new Jedis(address.getHost(), address.getPort(), TIMEOUT)) {
+                for (Map<String, String> info : sentinel.sentinelSlaves(sentinelMaster())) {
+                    String flags = info.getOrDefault("flags", "");
+
+                    if (flags.contains("s_down") || flags.contains("o_down") || flags.contains("disconnected")
+                            || !"ok".equals(info.get("master-link-status"))) {
+                        continue;
+                    }
+
+                    replicas.add(new HostAndPort(info.get("ip"), Integer.parseInt(info.get("port"))));
+                }
+
+                return replicas;
+            } catch (JedisException ex) {
+                MineCloud.logger().log(Level.FINE, "Sentinel " + address + " is unreachable", ex);
+            }
+        }
+
+        return replicas;
+    }
+
+    private static JedisPoolConfig poolConfig() {
         JedisPoolConfig config = new JedisPoolConfig();
 
-        config.setMaxTotal(20);
-        config.setMaxIdle(10);
-        config.setMinIdle(3);
+        config.setMaxTotal(POOL_SIZE);
+        config.setMaxIdle(POOL_IDLE);
+        config.setMinIdle(POOL_MIN_IDLE);
+        config.setMaxWaitMillis(POOL_MAX_WAIT);
+        return config;
+    }
+
+    private String password() {
+        return credentials.password() == null || credentials.password().length < 1 ?
+                null : new String(credentials.password());
+    }
 
-        String host = credentials.hosts()[0];
-        int port = 6379;
+    private static HostAndPort hostAndPort(String host, int defaultPort) {
+        String[] parts = host.trim().split(":");
+        int port = defaultPort;
 
-        if (host.split(":").length == 2) {
+        if (parts.length == 2) {
             try {
-                port = Integer.parseInt(host.split(":")[1]);
+                port = Integer.parseInt(parts[1]);
             } catch (NumberFormatException ignored) {
                 MineCloud.logger().warning("Host " + host + " has an invalid port!");
             }
         }
 
-        if (credentials.password() == null || credentials.password().length < 1) {
-            pool = new JedisPool(config, host, port, 1000);
-        } else {
-            pool = new JedisPool(config, host, port, 1000, new String(credentials.password()));
-        }
+        return new HostAndPort(parts[0], port);
+    }
+
+    public SubscriptionManager subscriptions() {
+        return subscriptions;
     }
 
     public void addChannel(RedisChannel channel) {
@@ -76,29 +301,210 @@ public final class RedisDatabase implements Database {
         return channels.computeIfAbsent(name, key -> SimpleRedisChannel.create(key, this));
     }
 
+    /**
+     * Publishes through the channel registered under the name if there is one, which delivers
+     * to its local subscribers directly, see {@link RedisChannel#publish(Message)}
+     */
+    public void publish(String channel, Message message) {
+        RedisChannel local = channels.get(channel);
+
+        if (local != null) {
+            local.publish(message);
+        } else {
+            publish(channel.getBytes(StandardCharsets.UTF_8), message.raw());
+        }
+    }
+
+    public void publish(byte[] channel, byte[] frame) {
+        publish(channel, frame, false);
+    }
+
+    /**
+     * Publishes an already framed message, see {@link Message#raw()} and {@link Message#encode}.
+     * Large frames are compressed on the way, see {@link Compression}; frames from
+     * {@link Message#encode(io.minecloud.db.redis.msg.schema.SchemaMessage, long)} are sent as they are.
+     *
+     * @param deliveredLocally Whether the message was already delivered to the subscribers of this instance,
+     *                         in which case it is stamped with the {@link #origin()} so they drop the copy Redis echoes
+     */
+    public void publish(byte[] channel, byte[] frame, boolean deliveredLocally) {
+        publish(channel, frame, deliveredLocally, Priority.NORMAL);
+    }
+
+    /**
+     * @param priority Lane to publish in, high priority messages are published through reserved connections
+     */
+    public void publish(byte[] channel, byte[] frame, boolean deliveredLocally, Priority priority) {
+        byte[] compressed = Compression.compress(frame);
+        byte[] payload = deliveredLocally && Message.originOf(compressed) != origin ?
+                Message.withOrigin(compressed, origin) : compressed;
+
+        execute(priority, (resource) -> resource.publish(channel, payload));
+        publishedBytes.add(payload.length);
+    }
+
+    /**
+     * Publishes a request on the provided channel and waits for the first reply of a responder
+     * registered through {@link #respond(String, RequestHandler)}
+     *
+     * @return A future of the reply, completed exceptionally with a TimeoutException if no reply arrives in time
+     */
+    public CompletableFuture<Message> request(String channel, Message message, long timeout, TimeUnit unit) {
+        return requests.request(channel, message, timeout, unit);
+    }
+
+    public void respond(String channel, RequestHandler handler) {
+        requests.respond(channel, handler);
+    }
+
+    private void registerMetrics() {
+        MetricRegistry metrics = MineCloud.metrics();
+
+        metrics.gauge("redis.executor.active", () -> RedisChannel.getExecutor() instanceof ThreadPoolExecutor ?
+                ((ThreadPoolExecutor) RedisChannel.getExecutor()).getActiveCount() : -1);
+        metrics.gauge("redis.executor.queued", () -> RedisChannel.getExecutor() instanceof ThreadPoolExecutor ?
+                ((ThreadPoolExecutor) RedisChannel.getExecutor()).getQueue().size() : -1);
+        metrics.gauge("redis.executor.priority.active", () -> ((ThreadPoolExecutor) RedisChannel.getExecutor(Priority.HIGH))
+                .getActiveCount());
+        metrics.gauge("redis.master", () -> pool instanceof JedisSentinelPool ?
+                ((JedisSentinelPool) pool).getCurrentHostMaster() : credentials.hosts()[0]);
+        metrics.gauge("redis.replica", () -> replica == null ? "none" : replica);
+        metrics.gauge("redis.pool.size", () -> POOL_SIZE);
+        metrics.gauge("redis.pool.priority.size", () -> PRIORITY_CONNECTIONS);
+        metrics.gauge("redis.compression.compressed", Compression::compressedMessages);
+        metrics.gauge("redis.compression.incompressible", Compression::incompressibleMessages);
+        metrics.gauge("redis.compression.ratio", () -> String.format("%.3f", Compression.compressionRatio()));
+        metrics.gauge("redis.compression.compress-ns", Compression::compressionNanos);
+        metrics.gauge("redis.compression.inflated", Compression::inflatedMessages);
+        metrics.gauge("redis.compression.inflate-ns", Compression::inflationNanos);
+    }
+
     public Jedis grabResource() {
-        return pool.getResource();
+        return grabResource(Priority.NORMAL);
+    }
+
+    /**
+     * Grabs a connection of the provided lane, high priority connections are reserved for
+     * player facing operations and must not be held for long
+     */
+    public Jedis grabResource(Priority priority) {
+        boolean high = priority == Priority.HIGH;
+        long start = System.nanoTime();
+
+        try {
+            return (high ? priorityPool : pool).getResource();
+        } catch (JedisConnectionException ex) {
+            if (ex.getCause() instanceof NoSuchElementException) {
+                poolExhausted.increment(); // every connection stayed borrowed for the max wait
+            }
+
+            throw ex;
+        } finally {
+            (high ? priorityPoolWait : poolWait).recordSince(start);
+        }
+    }
+
+    /**
+     * Grabs a connection to a replica, for reads which tolerate replication lag such as heartbeats and
+     * telemetry. Returns a connection to the master when no replica is reachable.
+     */
+    public Jedis grabReadResource() {
+        JedisPool replicas = readPool;
+
+        if (replicas != null) {
+            try {
+                return replicas.getResource();
+            } catch (JedisConnectionException ex) {
+                readFallbacks.increment();
+                MineCloud.logger().log(Level.FINE, "Redis replica " + replica + " is unreachable", ex);
+                refreshReplicasIfDue();
+            }
+        }
+
+        return grabResource();
+    }
+
+    /**
+     * Runs the action on a master connection, retrying with backoff while the master is unreachable, which
+     * covers a restart or a Sentinel failover
+     */
+    public <T> T execute(Function<Jedis, T> action) {
+        return execute(Priority.NORMAL, action);
+    }
+
+    public <T> T execute(Priority priority, Function<Jedis, T> action) {
+        for (int attempt = 0; ; attempt++) {
+            try (Jedis resource = grabResource(priority)) {
+                return action.apply(resource);
+            } catch (JedisConnectionException ex) {
+                if (attempt >= RETRIES) {
+                    throw ex;
+                }
+
+                retries.increment();
+
+                try {
+                    Thread.sleep(RETRY_BACKOFF << attempt);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Random id of this instance, which messages already delivered locally are stamped with
+     */
+    public long origin() {
+        return origin;
+    }
+
+    private static long originId() {
+        long id;
+
+        do {
+            id = new Random().nextLong();
+        } while (id == 0);
+
+        return id;
     }
 
     public Credentials credentials() {
         return credentials;
     }
 
+    /**
+     * Checks whether the master is reachable. The pools reconnect by themselves, a failed check only
+     * refreshes the replica used for reads.
+     */
     public boolean connected() {
-        boolean success = false;
-        for (int i = 0; i < 3 && !success; i++) {
-            try (Jedis jedis = pool.getResource()) {
+        for (int i = 0; i < 3; i++) {
+            try (Jedis jedis = grabResource()) {
                 jedis.ping();
-                success = true;
+                refreshReplicasIfDue();
+                return true;
             } catch (JedisConnectionException e) {
                 MineCloud.logger().log(Level.SEVERE, "Redis connection had died, reconnecting. {0}", new Object[] {
                         e
                 });
-                e.printStackTrace();
-                success = false;
-                setup();
             }
+
+            try {
+                Thread.sleep(RETRY_BACKOFF << i);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        refreshReplicasIfDue();
+        return false;
+    }
+
+    private void refreshReplicasIfDue() {
+        if (System.currentTimeMillis() - replicasRefreshed >= REPLICA_REFRESH_INTERVAL) {
+            refreshReplicas();
         }
-        return success;
     }
 }
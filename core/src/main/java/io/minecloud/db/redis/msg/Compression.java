@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg;
+
+import io.minecloud.MineCloudException;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Compression of published frames. Frames larger than the threshold (system property
+ * minecloud.compression-threshold, in bytes, 1024 by default) are deflated when it makes them smaller.
+ * </p>
+ *
+ * Compressed frame: [id | {@link Message#FLAGS}][{@link Message#FLAG_COMPRESSED}][origin, if any][inflated length varint][deflated payload]
+ */
+public final class Compression {
+    private static final int THRESHOLD = Integer.getInteger("minecloud.compression-threshold", 1024);
+    private static final int LEVEL = Integer.getInteger("minecloud.compression-level", Deflater.BEST_SPEED);
+    private static final int MAX_INFLATED_SIZE = 512 * 1024 * 1024; // largest value Redis accepts
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(LEVEL));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+    private static final int MAX_SCRATCH_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[THRESHOLD < 0 ? 0 : THRESHOLD * 2]);
+
+    private static final LongAdder COMPRESSED = new LongAdder();
+    private static final LongAdder NOT_COMPRESSIBLE = new LongAdder();
+    private static final LongAdder BYTES_IN = new LongAdder();
+    private static final LongAdder BYTES_OUT = new LongAdder();
+    private static final LongAdder COMPRESS_NANOS = new LongAdder();
+    private static final LongAdder INFLATED = new LongAdder();
+    private static final LongAdder INFLATE_NANOS = new LongAdder();
+
+    private Compression() {
+    }
+
+    /**
+     * @return The compressed frame, or the provided frame if it is below the threshold, already compressed,
+     * or does not get smaller
+     */
+    public static byte[] compress(byte[] frame) {
+        byte[] compressed = deflate(frame, 0, frame.length);
+
+        return compressed == null ? frame : compressed;
+    }
+
+    /**
+     * Takes the frame at [offset, offset + length) of a reused buffer, as published
+     *
+     * @return An exactly sized copy of the frame, compressed like {@link #compress(byte[])} would
+     */
+    public static byte[] frame(byte[] buffer, int offset, int length) {
+        byte[] compressed = deflate(buffer, offset, length);
+
+        return compressed == null ? Arrays.copyOfRange(buffer, offset, offset + length) : compressed;
+    }
+
+    // deflates into a scratch buffer of the thread, so the returned frame is the only allocation
+    private static byte[] deflate(byte[] frame, int offset, int length) {
+        if (THRESHOLD < 0 || length <= THRESHOLD) {
+            return null;
+        }
+
+        int header = 1;
+
+        if ((frame[offset] & Message.FLAGS) != 0) {
+            int flags = frame[offset + 1];
+
+            if ((flags & Message.FLAG_COMPRESSED) != 0) {
+                return null;
+            }
+
+            header = (flags & Message.FLAG_ORIGIN) != 0 ? 10 : 2;
+        }
+
+        long start = System.nanoTime();
+        int payload = length - header;
+        Deflater deflater = DEFLATER.get();
+        byte[] out = scratch(length);
+        int position = 0;
+
+        out[position++] = (byte) (frame[offset] | Message.FLAGS);
+        out[position++] = (byte) ((header > 1 ? frame[offset + 1] : 0) | Message.FLAG_COMPRESSED);
+
+        if (header == 10) {
+            System.arraycopy(frame, offset + 2, out, position, 8);
+            position += 8;
+        }
+
+        for (int value = payload; ; value >>>= 7) {
+            if ((value & ~0x7F) == 0) {
+                out[position++] = (byte) value;
+                break;
+            }
+
+            out[position++] = (byte) (value & 0x7F | 0x80);
+        }
+
+        try {
+            deflater.setInput(frame, offset + header, payload);
+            deflater.finish();
+
+            // only worth sending if it ends up smaller than the frame
+            int written = deflater.deflate(out, position, length - 1 - position);
+
+            COMPRESS_NANOS.add(System.nanoTime() - start);
+
+            if (!deflater.finished()) {
+                NOT_COMPRESSIBLE.increment();
+                return null;
+            }
+
+            COMPRESSED.increment();
+            BYTES_IN.add(length);
+            BYTES_OUT.add(position + written);
+            return Arrays.copyOf(out, position + written);
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    private static byte[] scratch(int size) {
+        byte[] scratch = SCRATCH.get();
+
+        if (scratch.length < size) {
+            scratch = new byte[size];
+
+            if (size <= MAX_SCRATCH_SIZE) {
+                SCRATCH.set(scratch);
+            }
+        }
+
+        return scratch;
+    }
+
+    static byte[] inflate(byte[] data, int offset, int length) {
+        long start = System.nanoTime();
+        int end = offset + length;
+        int size = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            if (offset >= end || shift > 28) {
+                throw new MineCloudException("Invalid length of compressed message");
+            }
+
+            b = data[offset++];
+            size |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        if (size < 0 || size > MAX_INFLATED_SIZE) {
+            throw new MineCloudException("Compressed message claims " + size + " bytes");
+        }
+
+        Inflater inflater = INFLATER.get();
+        byte[] out = new byte[size];
+
+        try {
+            inflater.setInput(data, offset, end - offset);
+
+            if (inflater.inflate(out) != size || !inflater.finished()) {
+                throw new MineCloudException("Compressed message does not match its length");
+            }
+        } catch (DataFormatException ex) {
+            throw new MineCloudException("Could not inflate message", ex);
+        } finally {
+            inflater.reset();
+        }
+
+        INFLATED.increment();
+        INFLATE_NANOS.add(System.nanoTime() - start);
+        return out;
+    }
+
+    public static long compressedMessages() {
+        return COMPRESSED.sum();
+    }
+
+    /**
+     * @return Amount of frames above the threshold which were sent as is since deflating did not make them smaller
+     */
+    public static long incompressibleMessages() {
+        return NOT_COMPRESSIBLE.sum();
+    }
+
+    public static long bytesBeforeCompression() {
+        return BYTES_IN.sum();
+    }
+
+    public static long bytesAfterCompression() {
+        return BYTES_OUT.sum();
+    }
+
+    /**
+     * @return Compressed size over original size of all compressed frames, 1 if nothing was compressed
+     */
+    public static double compressionRatio() {
+        long in = BYTES_IN.sum();
+
+        return in == 0 ? 1 : BYTES_OUT.sum() / (double) in;
+    }
+
+    public static long compressionNanos() {
+        return COMPRESS_NANOS.sum();
+    }
+
+    public static long inflatedMessages() {
+        return INFLATED.sum();
+    }
+
+    public static long inflationNanos() {
+        return INFLATE_NANOS.sum();
+    }
+}
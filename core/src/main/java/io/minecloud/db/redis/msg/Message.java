@@ -15,30 +15,65 @@
  */
 package io.minecloud.db.redis.msg;
 
+import io.minecloud.MineCloudException;
 import io.minecloud.annotation.Immutable;
 import io.minecloud.db.redis.msg.binary.MessageInputStream;
+import io.minecloud.db.redis.msg.binary.MessageOutputStream;
+import io.minecloud.db.redis.msg.schema.MessageRegistry;
+import io.minecloud.db.redis.msg.schema.Schema;
+import io.minecloud.db.redis.msg.schema.SchemaMessage;
 import org.json.JSONObject;
 
-import java.nio.charset.Charset;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 @Immutable
 public final class Message {
+    /**
+     * Highest message id, the top bit of the header byte is {@link #FLAGS}
+     */
+    public static final int MAX_ID = 0x7F;
+    /**
+     * Set on the header byte when a byte of flags follows it
+     */
+    public static final int FLAGS = 0x80;
+    public static final int FLAG_COMPRESSED = 0x01;
+    /**
+     * Set when the flags are followed by the 8 byte origin of the publisher, see {@link #withOrigin}
+     */
+    public static final int FLAG_ORIGIN = 0x02;
+
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
     private final MessageType type;
+    private final int id;
+    // contents are a view over [offset, offset + length) so received messages can be read in place
     private final byte[] contents;
+    private final int offset;
+    private final int length;
 
-    private Message(byte[] contents) {
+    private Message(MessageType type, int id, byte[] contents, int offset, int length) {
+        this.type = type;
+        this.id = id;
         this.contents = contents;
-        this.type = MessageType.BINARY;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    private Message(MessageType type, int id, byte[] contents) {
+        this(type, id, contents, 0, contents.length);
+    }
+
+    private Message(byte[] contents) {
+        this(MessageType.BINARY, MessageType.BINARY.ordinal(), contents);
     }
 
     private Message(JSONObject object) {
-        this.type = MessageType.JSON;
-        this.contents = object.toString().getBytes(Charset.forName("UTF-8"));
+        this(MessageType.JSON, MessageType.JSON.ordinal(), object.toString().getBytes(StandardCharsets.UTF_8));
     }
 
     private Message(String content) {
-        this.type = MessageType.STRING;
-        this.contents = content.getBytes(Charset.forName("UTF-8"));
+        this(MessageType.STRING, MessageType.STRING.ordinal(), content.getBytes(StandardCharsets.UTF_8));
     }
 
     public static Message messageFrom(byte[] contents) {
@@ -53,15 +88,138 @@ public final class Message {
         return new Message(content);
     }
 
+    public static Message messageFrom(SchemaMessage message) {
+        return decode(encode(message));
+    }
+
+    /**
+     * Encodes a typed message straight into its {@link #raw()} form, through the stream pooled
+     * for the current thread; the returned array is the only allocation of a steady state encode.
+     */
+    public static byte[] encode(SchemaMessage message) {
+        return encode(message, 0);
+    }
+
+    /**
+     * Encodes a typed message into the frame as published, stamped with the origin unless it is 0
+     * and compressed if it is large, so publishing it takes no further copies
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] encode(SchemaMessage message, long origin) {
+        Schema<SchemaMessage> schema = (Schema<SchemaMessage>) MessageRegistry.schemaBy(message.getClass());
+        MessageOutputStream os = MessageOutputStream.acquireFrame();
+
+        try {
+            schema.write(message, os);
+            return os.toFrame(schema.id(), origin);
+        } catch (IOException ex) {
+            throw new MineCloudException("Could not encode " + message.getClass().getSimpleName(), ex);
+        } finally {
+            os.release();
+        }
+    }
+
+    /**
+     * Decodes a message from its {@link #raw()} form; the first byte is the message id,
+     * which is the ordinal of the {@link MessageType} for untyped messages. If the {@link #FLAGS}
+     * bit of it is set, a byte of flags follows the id, then the origin if {@link #FLAG_ORIGIN} is set.
+     *
+     * The returned message reads directly from the provided array, which must not be modified afterwards.
+     */
+    public static Message decode(byte[] raw) {
+        return decode(raw, 0, raw.length);
+    }
+
+    public static Message decode(byte[] raw, int offset, int length) {
+        int header = raw[offset] & 0xFF;
+        int id = header & MAX_ID;
+        int start = offset + 1;
+
+        if ((header & FLAGS) != 0) {
+            int flags = raw[start++];
+
+            if ((flags & FLAG_ORIGIN) != 0) {
+                start += 8;
+            }
+
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                byte[] inflated = Compression.inflate(raw, start, offset + length - start);
+
+                return create(id, inflated, 0, inflated.length);
+            }
+        }
+
+        return create(id, raw, start, offset + length - start);
+    }
+
+    /**
+     * Stamps a frame with the origin of its publisher, so the publisher can recognize its own messages
+     * when Redis echoes them back
+     *
+     * @return A copy of the frame, with the origin inserted after its flags
+     */
+    public static byte[] withOrigin(byte[] frame, long origin) {
+        boolean flagged = (frame[0] & FLAGS) != 0;
+        int body = flagged ? 2 : 1;
+        byte[] stamped = new byte[frame.length - body + 10];
+
+        stamped[0] = (byte) (frame[0] | FLAGS);
+        stamped[1] = (byte) ((flagged ? frame[1] : 0) | FLAG_ORIGIN);
+
+        for (int i = 0; i < 8; i++) {
+            stamped[2 + i] = (byte) (origin >>> (56 - 8 * i));
+        }
+
+        System.arraycopy(frame, body, stamped, 10, frame.length - body);
+        return stamped;
+    }
+
+    /**
+     * @return The origin a frame was stamped with through {@link #withOrigin}, or 0 if it has none
+     */
+    public static long originOf(byte[] raw) {
+        if (raw.length < 10 || (raw[0] & FLAGS) == 0 || (raw[1] & FLAG_ORIGIN) == 0) {
+            return 0;
+        }
+
+        long origin = 0;
+
+        for (int i = 0; i < 8; i++) {
+            origin = origin << 8 | (raw[2 + i] & 0xFF);
+        }
+
+        return origin;
+    }
+
+    private static Message create(int id, byte[] contents, int offset, int length) {
+        if (id < MessageType.SCHEMA.ordinal()) {
+            return new Message(MESSAGE_TYPES[id], id, contents, offset, length);
+        }
+
+        if (id < MessageRegistry.FIRST_ID) {
+            throw new IllegalStateException("Invalid message id " + id);
+        }
+
+        return new Message(MessageType.SCHEMA, id, contents, offset, length);
+    }
+
     public MessageInputStream contents() {
-        return new MessageInputStream(contents);
+        return new MessageInputStream(contents, offset, length);
     }
 
+    /**
+     * @return The message with its header, as published. Messages which were built from or received
+     * as a whole frame return that array, which must not be modified.
+     */
     public byte[] raw() {
-        byte[] raw = new byte[contents.length + 1];
+        if (offset == 1 && length == contents.length - 1 && contents[0] == (byte) id) {
+            return contents;
+        }
 
-        raw[0] = (byte) type.ordinal();
-        System.arraycopy(contents, 0, raw, 1, contents.length);
+        byte[] raw = new byte[length + 1];
+
+        raw[0] = (byte) id;
+        System.arraycopy(contents, offset, raw, 1, length);
 
         return raw;
     }
@@ -70,6 +228,25 @@ public final class Message {
         return type;
     }
 
+    public int id() {
+        return id;
+    }
+
+    public boolean is(Class<? extends SchemaMessage> type) {
+        return this.type == MessageType.SCHEMA && MessageRegistry.schemaBy(type).id() == id;
+    }
+
+    public <T extends SchemaMessage> T as(Class<T> type) {
+        if (!is(type))
+            throw new UnsupportedOperationException("Cannot convert message " + id + " to " + type.getSimpleName());
+
+        try {
+            return MessageRegistry.schemaBy(type).read(contents());
+        } catch (IOException ex) {
+            throw new MineCloudException("Could not decode " + type.getSimpleName(), ex);
+        }
+    }
+
     public JSONObject asJson() {
         if (type() != MessageType.JSON)
             throw new UnsupportedOperationException("Cannot convert " + type() + " to JSON");
@@ -79,9 +256,9 @@ public final class Message {
 
     @Override
     public String toString() {
-        if (type() == MessageType.BINARY)
+        if (type() == MessageType.BINARY || type() == MessageType.SCHEMA)
             throw new UnsupportedOperationException("Cannot convert non-string binary to String");
 
-        return new String(contents, Charset.forName("UTF-8"));
+        return new String(contents, offset, length, StandardCharsets.UTF_8);
     }
 }
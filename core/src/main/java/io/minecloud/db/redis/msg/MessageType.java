@@ -18,5 +18,10 @@ package io.minecloud.db.redis.msg;
 public enum MessageType {
     JSON,
     STRING,
-    BINARY
+    BINARY,
+    /**
+     * Typed message, encoded through the schema registered for its id in the
+     * {@link io.minecloud.db.redis.msg.schema.MessageRegistry}
+     */
+    SCHEMA
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg.binary;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Bounded table of decoded strings keyed by their UTF-8 bytes, for the small and repetitive set of
+ * names (nodes, networks, types, servers) found in messages. Lookups do not allocate on a hit.
+ * </p>
+ *
+ * The table is direct mapped; a colliding string replaces the previous entry, which keeps it bounded
+ * without any eviction bookkeeping. Entries are immutable, so racing writers can only lose an entry.
+ */
+public final class InternTable {
+    private static final int MAX_LENGTH = 64;
+
+    private final Entry[] entries;
+    private final int mask;
+
+    public InternTable(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public String intern(byte[] buf, int offset, int length) {
+        if (length > MAX_LENGTH) {
+            return new String(buf, offset, length, StandardCharsets.UTF_8);
+        }
+
+        int hash = hash(buf, offset, length);
+        int slot = hash & mask;
+        Entry entry = entries[slot];
+
+        if (entry != null && entry.hash == hash && entry.matches(buf, offset, length)) {
+            return entry.value;
+        }
+
+        String value = new String(buf, offset, length, StandardCharsets.UTF_8);
+
+        entries[slot] = new Entry(hash, Arrays.copyOfRange(buf, offset, offset + length), value);
+        return value;
+    }
+
+    private static int hash(byte[] buf, int offset, int length) {
+        int hash = 1;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buf[i];
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry {
+        private final int hash;
+        private final byte[] key;
+        private final String value;
+
+        private Entry(int hash, byte[] key, String value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        private boolean matches(byte[] buf, int offset, int length) {
+            if (key.length != length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (key[i] != buf[offset + i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
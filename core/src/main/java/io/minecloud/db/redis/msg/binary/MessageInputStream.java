@@ -16,67 +16,165 @@
 package io.minecloud.db.redis.msg.binary;
 
 import io.minecloud.db.redis.msg.Message;
-import io.minecloud.db.redis.msg.MessageType;
 import org.json.JSONObject;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
 
 public class MessageInputStream extends ByteArrayInputStream {
+    private static final InternTable INTERNED = new InternTable(1024);
 
     public MessageInputStream(byte[] buf) {
         super(buf);
     }
 
+    public MessageInputStream(byte[] buf, int offset, int length) {
+        super(buf, offset, length);
+    }
+
+    /**
+     * Reads a nested message, which shares the buffer of this stream
+     *
+     * @throws IllegalArgumentException If the length is empty or exceeds the remaining bytes
+     */
     public Message readMessage() {
-        byte[] message = new byte[readVarInt32()];
-        MessageType type = MessageType.values()[read()];
-        byte[] data = new byte[message.length - 1];
+        int length = readVarInt32();
+
+        if (length < 1 || length > count - pos) {
+            throw new IllegalArgumentException("Message of " + length + " bytes exceeds the remaining " + (count - pos) + " bytes");
+        }
+
+        Message message = Message.decode(buf, pos, length);
 
-        System.arraycopy(message, 1, data, 0, message.length - 1);
+        pos += length;
+        return message;
+    }
 
-        switch (type) {
-            case BINARY:
-                return Message.messageFrom(data);
+    /**
+     * Reads a varint, see {@link MessageOutputStream} for the wire format
+     *
+     * @throws IllegalArgumentException If the varint is longer than 5 bytes or truncated
+     */
+    public int readVarInt32() {
+        int result = 0;
 
-            case JSON:
-                return Message.messageFrom(new JSONObject(new String(data, Charset.forName("UTF-8"))));
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readVarIntByte();
 
-            case STRING:
-                return Message.messageFrom(new String(data, Charset.forName("UTF-8")));
+            result |= (b & 0x7F) << shift;
 
-            default:
-                throw new IllegalStateException("Invalid message type!");
+            if ((b & 0x80) == 0) {
+                return result;
+            }
         }
+
+        throw new IllegalArgumentException("Too many bytes for VarInt32!");
     }
 
-    public int readVarInt32() {
-        int result = 0;
+    /**
+     * @throws IllegalArgumentException If the varint is longer than 10 bytes or truncated
+     */
+    public long readVarInt64() {
+        long result = 0;
 
-        int i = 0;
-        int b = read();
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readVarIntByte();
+
+            result |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+
+        throw new IllegalArgumentException("Too many bytes for VarInt64!");
+    }
+
+    private int readVarIntByte() {
+        if (pos >= count) {
+            throw new IllegalArgumentException("Truncated varint");
+        }
+
+        return buf[pos++];
+    }
+
+    public int readSignedVarInt32() {
+        return unZigZag(readVarInt32());
+    }
 
-        while ((b & 0x80) == 0x80) {
-            if (i > 21)
-                throw new IllegalArgumentException("Too many bytes for VarInt32!");
+    public long readSignedVarInt64() {
+        return unZigZag(readVarInt64());
+    }
+
+    public long readFixed64() throws IOException {
+        if (count - pos < 8) {
+            throw new EOFException("Fixed64 exceeds the remaining " + (count - pos) + " bytes");
+        }
+
+        long result = 0;
+
+        for (int i = 0; i < 8; i++) {
+            result = result << 8 | buf[pos++] & 0xFF;
+        }
 
-            result += (b & 0x7F) << i;
-            i += 7;
+        return result;
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readFixed64());
+    }
 
-            b = read();
+    public boolean readBoolean() throws IOException {
+        int b = read();
+
+        if (b == -1) {
+            throw new EOFException();
         }
 
-        return result + ((b & 0x7F) << i);
+        return b != 0;
+    }
+
+    public UUID readUuid() throws IOException {
+        return new UUID(readFixed64(), readFixed64());
+    }
+
+    public static int unZigZag(int i) {
+        return (i >>> 1) ^ -(i & 1);
+    }
+
+    public static long unZigZag(long l) {
+        return (l >>> 1) ^ -(l & 1);
     }
 
     public String readString() throws IOException {
-        int length = readVarInt32();
-        byte[] bytes = new byte[length];
+        int length = checkLength(readVarInt32());
+        String s = new String(buf, pos, length, StandardCharsets.UTF_8);
 
-        read(bytes);
+        pos += length;
+        return s;
+    }
+
+    /**
+     * Reads a string like {@link #readString()}, however returns a shared instance for
+     * strings which have been read before
+     */
+    public String readInternedString() throws IOException {
+        int length = checkLength(readVarInt32());
+        String s = INTERNED.intern(buf, pos, length);
+
+        pos += length;
+        return s;
+    }
+
+    private int checkLength(int length) throws IOException {
+        if (length < 0 || length > count - pos) {
+            throw new EOFException("String of " + length + " bytes exceeds the remaining " + (count - pos) + " bytes");
+        }
 
-        return new String(bytes, Charset.forName("UTF-8"));
+        return length;
     }
 
     public JSONObject readJson() throws IOException {
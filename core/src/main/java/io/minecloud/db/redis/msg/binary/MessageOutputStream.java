@@ -15,14 +15,104 @@
  */
 package io.minecloud.db.redis.msg.binary;
 
+import io.minecloud.db.redis.msg.Compression;
 import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.MessageType;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.UUID;
 
+/**
+ * <p>
+ * Binary encoding of message contents. All multi-byte values use one of the following forms:
+ * </p>
+ *
+ * <ul>
+ * <li>varint: unsigned LEB128, 7 bits per byte starting with the least significant group, the high bit of
+ * every byte but the last set. At most 5 bytes for 32 bit values and 10 bytes for 64 bit values.</li>
+ * <li>signed varint: the ZigZag form of the value as a varint, so values close to zero are short whatever
+ * their sign, see {@link #zigZag(long)}</li>
+ * <li>fixed64: 8 bytes, most significant first; doubles are written as their IEEE 754 bits</li>
+ * <li>string: varint length followed by the UTF-8 bytes</li>
+ * <li>boolean: a single byte, 0 or 1</li>
+ * <li>UUID: the most and then the least significant bits, as two fixed64</li>
+ * </ul>
+ *
+ * Unsigned varints of negative ints are always 5 bytes, fields which may be negative should be signed.
+ */
 public class MessageOutputStream extends ByteArrayOutputStream {
+    // id, flags and origin, see Message#decode
+    private static final int HEADER_SIZE = 10;
+    private static final int POOLED_SIZE = 256;
+    private static final int MAX_POOLED_SIZE = 64 * 1024;
+    private static final ThreadLocal<MessageOutputStream> POOL =
+            ThreadLocal.withInitial(() -> new MessageOutputStream(POOLED_SIZE));
+
+    private boolean acquired;
+
+    public MessageOutputStream() {
+        super();
+    }
+
+    public MessageOutputStream(int size) {
+        super(size);
+    }
+
+    /**
+     * Grabs the stream pooled for the current thread, with space reserved for the message header.
+     * The stream has to be given back through {@link #release()} once the frame has been taken.
+     */
+    public static MessageOutputStream acquireFrame() {
+        MessageOutputStream os = POOL.get();
+
+        if (os.acquired) {
+            os = new MessageOutputStream(POOLED_SIZE); // already in use further up the stack
+        }
+
+        os.acquired = true;
+        os.count = HEADER_SIZE;
+        return os;
+    }
+
+    /**
+     * @return An exactly sized copy of a stream from {@link #acquireFrame()} with the header set to the provided id,
+     * compressed if it is large, see {@link Compression}
+     */
+    public byte[] toFrame(int id) {
+        return toFrame(id, 0);
+    }
+
+    /**
+     * @param origin Origin to stamp the frame with, see {@link Message#withOrigin}, or 0 for none
+     */
+    public byte[] toFrame(int id, long origin) {
+        int start = origin == 0 ? HEADER_SIZE - 1 : 0;
+
+        if (origin == 0) {
+            buf[start] = (byte) id;
+        } else {
+            buf[0] = (byte) (id | Message.FLAGS);
+            buf[1] = Message.FLAG_ORIGIN;
+
+            for (int i = 0; i < 8; i++) {
+                buf[2 + i] = (byte) (origin >>> (56 - 8 * i));
+            }
+        }
+
+        return Compression.frame(buf, start, count - start);
+    }
+
+    public void release() {
+        acquired = false;
+        count = 0;
+
+        if (buf.length > MAX_POOLED_SIZE) {
+            buf = new byte[POOLED_SIZE];
+        }
+    }
 
     public void writeMessage(Message message) throws IOException {
         byte[] raw = message.raw();
@@ -35,24 +125,165 @@ public class MessageOutputStream extends ByteArrayOutputStream {
         writeString(object.toString());
     }
 
+    /**
+     * Writes the UTF-8 form of the string directly into the buffer; the output is identical to
+     * {@link String#getBytes(java.nio.charset.Charset)}, including '?' for unpaired surrogates.
+     */
     public void writeString(String s) throws IOException {
-        byte[] bytes = s.getBytes(Charset.forName("UTF-8"));
+        int length = sizeOfString(s);
+
+        writeVarInt32(length);
+        ensureCapacity(count + length);
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
 
-        writeVarInt32(bytes.length);
-        write(bytes);
+            if (c < 0x80) {
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xC0 | c >> 6);
+                buf[count++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+
+                buf[count++] = (byte) (0xF0 | codePoint >> 18);
+                buf[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buf[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buf[count++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buf[count++] = '?';
+            } else {
+                buf[count++] = (byte) (0xE0 | c >> 12);
+                buf[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[count++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
     }
 
     public void writeVarInt32(int i) {
-        while ((i & 0xFFFFFF) != 0L) {
-            write(i & 0x7F | 0x80);
+        ensureCapacity(count + 5);
 
+        while ((i & ~0x7F) != 0) {
+            buf[count++] = (byte) (i & 0x7F | 0x80);
             i >>>= 7;
         }
 
-        write(i & 0x7F);
+        buf[count++] = (byte) i;
+    }
+
+    public void writeVarInt64(long l) {
+        ensureCapacity(count + 10);
+
+        while ((l & ~0x7FL) != 0) {
+            buf[count++] = (byte) (l & 0x7F | 0x80);
+            l >>>= 7;
+        }
+
+        buf[count++] = (byte) l;
     }
 
+    public void writeSignedVarInt32(int i) {
+        writeVarInt32(zigZag(i));
+    }
+
+    public void writeSignedVarInt64(long l) {
+        writeVarInt64(zigZag(l));
+    }
+
+    public void writeFixed64(long l) {
+        ensureCapacity(count + 8);
+
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[count++] = (byte) (l >>> shift);
+        }
+    }
+
+    public void writeDouble(double d) {
+        writeFixed64(Double.doubleToRawLongBits(d));
+    }
+
+    public void writeBoolean(boolean b) {
+        write(b ? 1 : 0);
+    }
+
+    public void writeUuid(UUID id) {
+        writeFixed64(id.getMostSignificantBits());
+        writeFixed64(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Maps signed values to unsigned ones by interleaving them: 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...
+     */
+    public static int zigZag(int i) {
+        return (i << 1) ^ (i >> 31);
+    }
+
+    public static long zigZag(long l) {
+        return (l << 1) ^ (l >> 63);
+    }
+
+    /**
+     * @return Amount of bytes {@link #writeVarInt32(int)} writes for the provided value
+     */
+    public static int sizeOfVarInt32(int i) {
+        return i == 0 ? 1 : (31 - Integer.numberOfLeadingZeros(i)) / 7 + 1;
+    }
+
+    /**
+     * @return Amount of bytes {@link #writeVarInt64(long)} writes for the provided value
+     */
+    public static int sizeOfVarInt64(long l) {
+        return l == 0 ? 1 : (63 - Long.numberOfLeadingZeros(l)) / 7 + 1;
+    }
+
+    /**
+     * @return Amount of bytes of the UTF-8 form of the string, without its length prefix
+     */
+    public static int sizeOfString(String s) {
+        int size = 0;
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                size += 1;
+            } else {
+                size += 3;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @return The contents as a binary message; for a stream from {@link #acquireFrame()} the frame
+     * is copied out once, since the space for its header is already reserved
+     */
     public Message toMessage() {
-        return Message.messageFrom(toByteArray());
+        if (acquired) {
+            byte[] frame = Arrays.copyOfRange(buf, HEADER_SIZE - 1, count);
+
+            frame[0] = (byte) MessageType.BINARY.ordinal();
+            return Message.decode(frame);
+        }
+
+        byte[] frame = new byte[count + 1];
+
+        frame[0] = (byte) MessageType.BINARY.ordinal();
+        System.arraycopy(buf, 0, frame, 1, count);
+        return Message.decode(frame);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, capacity));
+        }
     }
 }
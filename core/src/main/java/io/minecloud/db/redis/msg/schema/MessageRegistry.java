@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg.schema;
+
+import io.minecloud.MineCloudException;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.types.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps message ids, the first byte of every published message, to the schema of the typed message.
+ * Ids 0 to {@link #FIRST_ID} - 1 are reserved for the untyped {@link io.minecloud.db.redis.msg.MessageType}s.
+ */
+public final class MessageRegistry {
+    public static final int FIRST_ID = 16;
+
+    private static final AtomicReferenceArray<Schema<?>> BY_ID = new AtomicReferenceArray<>(Message.MAX_ID + 1);
+    private static final Map<Class<?>, Schema<?>> BY_CLASS = new ConcurrentHashMap<>();
+
+    static {
+        register(ServerCreate.class);
+        register(ServerKill.class);
+        register(BungeeCreate.class);
+        register(BungeeKill.class);
+        register(Teleport.class);
+        register(TeleportType.class);
+        register(ServerStartNotif.class);
+        register(ServerShutdownNotif.class);
+        register(ServerDeployed.class);
+        register(RegistryEvent.class);
+        register(CacheInvalidation.class);
+    }
+
+    private MessageRegistry() {
+    }
+
+    public static synchronized <T extends SchemaMessage> Schema<T> register(Class<T> type) {
+        Schema<T> schema = Schema.of(type);
+        Schema<?> existing = BY_ID.get(schema.id());
+
+        if (existing != null && existing.type() != type) {
+            throw new MineCloudException("Message id " + schema.id() + " of " + type.getName() +
+                    " is already used by " + existing.type().getName());
+        }
+
+        BY_ID.set(schema.id(), schema);
+        BY_CLASS.put(type, schema);
+        return schema;
+    }
+
+    public static Schema<?> schemaBy(int id) {
+        return BY_ID.get(id & Message.MAX_ID);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends SchemaMessage> Schema<T> schemaBy(Class<T> type) {
+        Schema<T> schema = (Schema<T>) BY_CLASS.get(type);
+
+        return schema == null ? register(type) : schema;
+    }
+}
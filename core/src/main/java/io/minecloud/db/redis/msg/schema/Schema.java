@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg.schema;
+
+import io.minecloud.MineCloudException;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.binary.MessageInputStream;
+import io.minecloud.db.redis.msg.binary.MessageOutputStream;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * <p>
+ * Codec of a {@link SchemaMessage} class, built once through reflection and cached in the {@link MessageRegistry}.
+ * </p>
+ *
+ * Wire format: [schema version][key][value]...[key][value]
+ * where key is a varint of (tag << 3 | wire type): 0 for varints (int, long and boolean, ZigZag encoded for
+ * {@link Tag#signed()} fields), 1 for fixed64 (double) and 2 for length prefixed values (strings, UUIDs,
+ * lists and maps), see {@link MessageOutputStream} for the encoding of each. Fields holding their default
+ * value (null, 0 or false) are not written. Tags unknown to the reader are skipped, so fields may be added without breaking
+ * older readers.
+ */
+public final class Schema<T extends SchemaMessage> {
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_FIXED64 = 1;
+    static final int WIRE_LENGTH = 2;
+
+    private final Class<T> type;
+    private final int id;
+    private final int version;
+    private final Priority priority;
+    private final Constructor<T> constructor;
+    private final FieldCodec[] fields;
+    private final FieldCodec[] byTag;
+
+    private Schema(Class<T> type) {
+        MessageSchema schema = type.getAnnotation(MessageSchema.class);
+
+        if (schema == null) {
+            throw new MineCloudException(type.getName() + " is missing a @MessageSchema annotation");
+        }
+
+        if (schema.id() < MessageRegistry.FIRST_ID || schema.id() > Message.MAX_ID) {
+            throw new MineCloudException("Message id of " + type.getName() + " is out of range");
+        }
+
+        List<FieldCodec> codecs = new ArrayList<>();
+
+        for (Field field : type.getDeclaredFields()) {
+            Tag tag = field.getAnnotation(Tag.class);
+
+            if (tag == null) {
+                continue;
+            }
+
+            if (tag.value() < 1) {
+                throw new MineCloudException("Invalid tag " + tag.value() + " on " + type.getName() + "#" + field.getName());
+            }
+
+            field.setAccessible(true);
+            FieldKind kind = FieldKind.of(field);
+
+            if (tag.signed() && kind != FieldKind.INT && kind != FieldKind.LONG) {
+                throw new MineCloudException("Only int and long fields can be signed, see " + type.getName() + "#" + field.getName());
+            }
+
+            codecs.add(new FieldCodec(field, tag.value(), kind, tag.intern(), tag.signed()));
+        }
+
+        codecs.sort(Comparator.comparingInt((codec) -> codec.tag));
+
+        this.type = type;
+        this.id = schema.id();
+        this.version = schema.version();
+        this.priority = schema.priority();
+        this.fields = codecs.toArray(new FieldCodec[codecs.size()]);
+        this.byTag = new FieldCodec[fields.length == 0 ? 1 : fields[fields.length - 1].tag + 1];
+
+        for (FieldCodec codec : fields) {
+            if (byTag[codec.tag] != null) {
+                throw new MineCloudException("Duplicate tag " + codec.tag + " in " + type.getName());
+            }
+
+            byTag[codec.tag] = codec;
+        }
+
+        try {
+            this.constructor = type.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException ex) {
+            throw new MineCloudException(type.getName() + " is missing a no-args constructor", ex);
+        }
+    }
+
+    static <T extends SchemaMessage> Schema<T> of(Class<T> type) {
+        return new Schema<>(type);
+    }
+
+    public Class<T> type() {
+        return type;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public Priority priority() {
+        return priority;
+    }
+
+    public void write(T message, MessageOutputStream os) throws IOException {
+        os.write(version);
+
+        for (FieldCodec codec : fields) {
+            codec.write(message, os);
+        }
+    }
+
+    public T read(MessageInputStream is) throws IOException {
+        T message = newInstance();
+
+        is.read(); // version; older writers leave newer fields at their default, newer writers' tags are skipped
+
+        while (is.available() > 0) {
+            int key = is.readVarInt32();
+            int tag = key >>> 3;
+            int wireType = key & 0x7;
+            FieldCodec codec = tag < byTag.length ? byTag[tag] : null;
+
+            if (codec == null || codec.kind.wireType != wireType) {
+                skip(is, wireType);
+                continue;
+            }
+
+            codec.read(message, is);
+        }
+
+        return message;
+    }
+
+    private T newInstance() {
+        try {
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new MineCloudException("Could not instantiate " + type.getName(), ex);
+        }
+    }
+
+    private static void skip(MessageInputStream is, int wireType) throws IOException {
+        switch (wireType) {
+            case WIRE_VARINT:
+                is.readVarInt64();
+                break;
+
+            case WIRE_FIXED64:
+                is.skip(8);
+                break;
+
+            case WIRE_LENGTH:
+                is.skip(is.readVarInt32());
+                break;
+
+            default:
+                throw new IOException("Unknown wire type " + wireType);
+        }
+    }
+
+    private enum FieldKind {
+        STRING(WIRE_LENGTH),
+        INT(WIRE_VARINT),
+        LONG(WIRE_VARINT),
+        BOOLEAN(WIRE_VARINT),
+        DOUBLE(WIRE_FIXED64),
+        UNIQUE_ID(WIRE_LENGTH),
+        STRING_LIST(WIRE_LENGTH),
+        STRING_MAP(WIRE_LENGTH);
+
+        private final int wireType;
+
+        FieldKind(int wireType) {
+            this.wireType = wireType;
+        }
+
+        static FieldKind of(Field field) {
+            Class<?> type = field.getType();
+
+            if (type == String.class) {
+                return STRING;
+            } else if (type == int.class) {
+                return INT;
+            } else if (type == long.class) {
+                return LONG;
+            } else if (type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == double.class) {
+                return DOUBLE;
+            } else if (type == UUID.class) {
+                return UNIQUE_ID;
+            } else if (type == List.class && hasStringArguments(field)) {
+                return STRING_LIST;
+            } else if (type == Map.class && hasStringArguments(field)) {
+                return STRING_MAP;
+            }
+
+            throw new MineCloudException("Unsupported field type " + field.getGenericType() + " for "
+                    + field.getDeclaringClass().getName() + "#" + field.getName());
+        }
+
+        private static boolean hasStringArguments(Field field) {
+            Type generic = field.getGenericType();
+
+            return generic instanceof ParameterizedType && Arrays.stream(((ParameterizedType) generic)
+                    .getActualTypeArguments()).allMatch((argument) -> argument == String.class);
+        }
+    }
+
+    private static final class FieldCodec {
+        private final Field field;
+        private final int tag;
+        private final FieldKind kind;
+        private final boolean intern;
+        private final boolean signed;
+        private final int key;
+
+        private FieldCodec(Field field, int tag, FieldKind kind, boolean intern, boolean signed) {
+            this.field = field;
+            this.tag = tag;
+            this.kind = kind;
+            this.intern = intern;
+            this.signed = signed;
+            this.key = tag << 3 | kind.wireType;
+        }
+
+        @SuppressWarnings("unchecked")
+        void write(Object message, MessageOutputStream os) throws IOException {
+            try {
+                switch (kind) {
+                    case STRING:
+                        String value = (String) field.get(message);
+
+                        if (value != null) {
+                            os.writeVarInt32(key);
+                            os.writeString(value);
+                        }
+                        break;
+
+                    case INT:
+                        int i = field.getInt(message);
+
+                        if (i != 0) {
+                            os.writeVarInt32(key);
+
+                            if (signed) {
+                                os.writeSignedVarInt32(i);
+                            } else {
+                                os.writeVarInt32(i);
+                            }
+                        }
+                        break;
+
+                    case LONG:
+                        long l = field.getLong(message);
+
+                        if (l != 0) {
+                            os.writeVarInt32(key);
+
+                            if (signed) {
+                                os.writeSignedVarInt64(l);
+                            } else {
+                                os.writeVarInt64(l);
+                            }
+                        }
+                        break;
+
+                    case DOUBLE:
+                        long bits = Double.doubleToRawLongBits(field.getDouble(message));
+
+                        if (bits != 0) { // -0.0 is written
+                            os.writeVarInt32(key);
+                            os.writeFixed64(bits);
+                        }
+                        break;
+
+                    case UNIQUE_ID:
+                        UUID id = (UUID) field.get(message);
+
+                        if (id != null) {
+                            os.writeVarInt32(key);
+                            os.writeVarInt32(16);
+                            os.writeUuid(id);
+                        }
+                        break;
+
+                    case BOOLEAN:
+                        if (field.getBoolean(message)) {
+                            os.writeVarInt32(key);
+                            os.writeVarInt32(1);
+                        }
+                        break;
+
+                    case STRING_LIST:
+                        List<String> list = (List<String>) field.get(message);
+
+                        if (list != null) {
+                            int length = MessageOutputStream.sizeOfVarInt32(list.size());
+
+                            for (String element : list) {
+                                length += sizeOf(element);
+                            }
+
+                            os.writeVarInt32(key);
+                            os.writeVarInt32(length);
+                            os.writeVarInt32(list.size());
+
+                            for (String element : list) {
+                                os.writeString(element);
+                            }
+                        }
+                        break;
+
+                    case STRING_MAP:
+                        Map<String, String> map = (Map<String, String>) field.get(message);
+
+                        if (map != null) {
+                            int length = MessageOutputStream.sizeOfVarInt32(map.size());
+
+                            for (Map.Entry<String, String> entry : map.entrySet()) {
+                                length += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+                            }
+
+                            os.writeVarInt32(key);
+                            os.writeVarInt32(length);
+                            os.writeVarInt32(map.size());
+
+                            for (Map.Entry<String, String> entry : map.entrySet()) {
+                                os.writeString(entry.getKey());
+                                os.writeString(entry.getValue());
+                            }
+                        }
+                        break;
+                }
+            } catch (IllegalAccessException ex) {
+                throw new MineCloudException("Could not read " + field.getName(), ex);
+            }
+        }
+
+        void read(Object message, MessageInputStream is) throws IOException {
+            try {
+                switch (kind) {
+                    case STRING:
+                        field.set(message, readString(is));
+                        break;
+
+                    case INT:
+                        field.setInt(message, signed ? is.readSignedVarInt32() : is.readVarInt32());
+                        break;
+
+                    case LONG:
+                        field.setLong(message, signed ? is.readSignedVarInt64() : is.readVarInt64());
+                        break;
+
+                    case DOUBLE:
+                        field.setDouble(message, is.readDouble());
+                        break;
+
+                    case UNIQUE_ID:
+                        if (is.readVarInt32() != 16) {
+                            throw new IOException("Invalid UUID length for " + field.getName());
+                        }
+
+                        field.set(message, is.readUuid());
+                        break;
+
+                    case BOOLEAN:
+                        field.setBoolean(message, is.readVarInt32() != 0);
+                        break;
+
+                    case STRING_LIST:
+                        is.readVarInt32(); // length
+                        int size = is.readVarInt32();
+                        List<String> list = new ArrayList<>(size);
+
+                        for (int i = 0; i < size; i++) {
+                            list.add(readString(is));
+                        }
+
+                        field.set(message, list);
+                        break;
+
+                    case STRING_MAP:
+                        is.readVarInt32(); // length
+                        int entries = is.readVarInt32();
+                        Map<String, String> map = new LinkedHashMap<>();
+
+                        for (int i = 0; i < entries; i++) {
+                            map.put(readString(is), readString(is));
+                        }
+
+                        field.set(message, map);
+                        break;
+                }
+            } catch (IllegalAccessException ex) {
+                throw new MineCloudException("Could not set " + field.getName(), ex);
+            }
+        }
+
+        private String readString(MessageInputStream is) throws IOException {
+            return intern ? is.readInternedString() : is.readString();
+        }
+
+        private static int sizeOf(String s) {
+            int size = MessageOutputStream.sizeOfString(s);
+
+            return MessageOutputStream.sizeOfVarInt32(size) + size;
+        }
+    }
+}
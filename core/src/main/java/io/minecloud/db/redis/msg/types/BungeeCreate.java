@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg.types;
+
+import io.minecloud.annotation.Immutable;
+import io.minecloud.db.redis.msg.schema.MessageSchema;
+import io.minecloud.db.redis.msg.schema.Tag;
+
+import java.util.UUID;
+
+@Immutable
+@MessageSchema(id = 18, version = 2)
+public final class BungeeCreate implements Command {
+    @Tag(value = 1, intern = true)
+    private String node;
+    @Tag(value = 2, intern = true)
+    private String network;
+    @Tag(value = 3, intern = true)
+    private String type;
+    @Tag(4)
+    private String idempotencyKey;
+
+    private BungeeCreate() {
+    }
+
+    public BungeeCreate(String node, String network, String type) {
+        this(node, network, type, UUID.randomUUID().toString());
+    }
+
+    public BungeeCreate(String node, String network, String type, String idempotencyKey) {
+        this.node = node;
+        this.network = network;
+        this.type = type;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String node() {
+        return node;
+    }
+
+    public String network() {
+        return network;
+    }
+
+    public String type() {
+        return type;
+    }
+
+    @Override
+    public String idempotencyKey() {
+        return idempotencyKey;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg.types;
+
+import io.minecloud.annotation.Immutable;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.schema.MessageSchema;
+import io.minecloud.db.redis.msg.schema.SchemaMessage;
+import io.minecloud.db.redis.msg.schema.Tag;
+
+/**
+ * Change of a cached entity, see {@link io.minecloud.db.mongo.CacheInvalidator}
+ */
+@Immutable
+@MessageSchema(id = 26, priority = Priority.HIGH)
+public final class CacheInvalidation implements SchemaMessage {
+    @Tag(value = 1, intern = true)
+    private String collection;
+    @Tag(2)
+    private String id;
+
+    private CacheInvalidation() {
+    }
+
+    public CacheInvalidation(String collection, String id) {
+        this.collection = collection;
+        this.id = id;
+    }
+
+    public String collection() {
+        return collection;
+    }
+
+    /**
+     * @return The id of the changed entity, or null if every entity of the collection should be invalidated
+     */
+    public String id() {
+        return id;
+    }
+}
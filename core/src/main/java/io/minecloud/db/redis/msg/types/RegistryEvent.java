@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg.types;
+
+import io.minecloud.annotation.Immutable;
+import io.minecloud.db.redis.msg.schema.MessageSchema;
+import io.minecloud.db.redis.msg.schema.SchemaMessage;
+import io.minecloud.db.redis.msg.schema.Tag;
+
+/**
+ * Change of the server registry of a network, see {@link io.minecloud.db.redis.registry.ServerRegistry}
+ */
+@Immutable
+@MessageSchema(id = 25)
+public final class RegistryEvent implements SchemaMessage {
+    @Tag(value = 1, intern = true)
+    private String network;
+    @Tag(2)
+    private int sequence;
+    @Tag(value = 3, intern = true)
+    private String server;
+    @Tag(4)
+    private String address;
+
+    private RegistryEvent() {
+    }
+
+    public RegistryEvent(String network, int sequence, String server, String address) {
+        this.network = network;
+        this.sequence = sequence;
+        this.server = server;
+        this.address = address;
+    }
+
+    public String network() {
+        return network;
+    }
+
+    public int sequence() {
+        return sequence;
+    }
+
+    public String server() {
+        return server;
+    }
+
+    /**
+     * @return The host:port of the server, or null if it was removed
+     */
+    public String address() {
+        return address;
+    }
+
+    public boolean removed() {
+        return address == null;
+    }
+}
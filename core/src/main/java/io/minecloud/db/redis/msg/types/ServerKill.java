@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg.types;
+
+import io.minecloud.annotation.Immutable;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.schema.MessageSchema;
+import io.minecloud.db.redis.msg.schema.Tag;
+
+import java.util.UUID;
+
+@Immutable
+@MessageSchema(id = 17, version = 2, priority = Priority.HIGH)
+public final class ServerKill implements Command {
+    @Tag(value = 1, intern = true)
+    private String node;
+    @Tag(value = 2, intern = true)
+    private String server;
+    @Tag(3)
+    private String idempotencyKey;
+
+    private ServerKill() {
+    }
+
+    public ServerKill(String node, String server) {
+        this(node, server, UUID.randomUUID().toString());
+    }
+
+    public ServerKill(String node, String server, String idempotencyKey) {
+        this.node = node;
+        this.server = server;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String node() {
+        return node;
+    }
+
+    public String server() {
+        return server;
+    }
+
+    @Override
+    public String idempotencyKey() {
+        return idempotencyKey;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.pubsub;
+
+import io.minecloud.MineCloud;
+import io.minecloud.metrics.Counter;
+import io.minecloud.metrics.Histogram;
+import io.minecloud.metrics.MetricRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of a single channel, registered under redis.channel.[name]. Latencies are in nanoseconds.
+ */
+public final class ChannelMetrics {
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final Counter published;
+    private final Counter received;
+    private final Counter decodeFailures;
+    private final Counter callbackFailures;
+    private final Counter resubscribes;
+    private final Counter localDeliveries;
+    private final Counter echoesDropped;
+    private final Histogram publishLatency;
+    private final Histogram decodeLatency;
+    private final Histogram handleLatency;
+    private volatile Histogram[] callbackLatencies = new Histogram[0];
+    private volatile long handlingSince;
+
+    ChannelMetrics(String channel) {
+        this.registry = MineCloud.metrics();
+        this.prefix = "redis.channel." + channel + ".";
+        this.published = registry.counter(prefix + "published");
+        this.received = registry.counter(prefix + "received");
+        this.decodeFailures = registry.counter(prefix + "decode-failures");
+        this.callbackFailures = registry.counter(prefix + "callback-failures");
+        this.resubscribes = registry.counter(prefix + "resubscribes");
+        this.localDeliveries = registry.counter(prefix + "local-deliveries");
+        this.echoesDropped = registry.counter(prefix + "echoes-dropped");
+        this.publishLatency = registry.histogram(prefix + "publish-ns");
+        this.decodeLatency = registry.histogram(prefix + "decode-ns");
+        this.handleLatency = registry.histogram(prefix + "handle-ns");
+
+        registry.gauge(prefix + "blocked-ms", () -> {
+            long since = handlingSince;
+
+            return since == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+        });
+    }
+
+    public long published() {
+        return published.count();
+    }
+
+    public long received() {
+        return received.count();
+    }
+
+    public long decodeFailures() {
+        return decodeFailures.count();
+    }
+
+    public long callbackFailures() {
+        return callbackFailures.count();
+    }
+
+    public long resubscribes() {
+        return resubscribes.count();
+    }
+
+    public long localDeliveries() {
+        return localDeliveries.count();
+    }
+
+    public long echoesDropped() {
+        return echoesDropped.count();
+    }
+
+    public Histogram publishLatency() {
+        return publishLatency;
+    }
+
+    public Histogram decodeLatency() {
+        return decodeLatency;
+    }
+
+    public Histogram handleLatency() {
+        return handleLatency;
+    }
+
+    void published(long startNanos) {
+        published.increment();
+        publishLatency.recordSince(startNanos);
+    }
+
+    void messageReceived() {
+        received.increment();
+    }
+
+    void resubscribed() {
+        resubscribes.increment();
+    }
+
+    void deliveredLocally() {
+        localDeliveries.increment();
+    }
+
+    void echoDropped() {
+        echoesDropped.increment();
+    }
+
+    void decodeFailed() {
+        decodeFailures.increment();
+    }
+
+    void decoded(long startNanos) {
+        decodeLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Marks the subscriber thread as blocked on handling a message, exposed as the blocked-ms gauge
+     */
+    void handling(long startNanos) {
+        handlingSince = startNanos;
+    }
+
+    void handled(long startNanos) {
+        handlingSince = 0;
+        handleLatency.recordSince(startNanos);
+    }
+
+    void callbackFailed() {
+        callbackFailures.increment();
+    }
+
+    Histogram callbackLatency(int index) {
+        Histogram[] latencies = callbackLatencies;
+
+        if (index < latencies.length) {
+            return latencies[index];
+        }
+
+        synchronized (this) {
+            latencies = callbackLatencies;
+
+            if (index >= latencies.length) {
+                latencies = Arrays.copyOf(latencies, index + 1);
+
+                for (int i = 0; i < latencies.length; i++) {
+                    if (latencies[i] == null) {
+                        latencies[i] = registry.histogram(prefix + "callback." + i + "-ns");
+                    }
+                }
+
+                callbackLatencies = latencies;
+            }
+
+            return latencies[index];
+        }
+    }
+}
@@ -15,57 +15,44 @@
  */
 package io.minecloud.db.redis.pubsub;
 
-import io.minecloud.MineCloud;
 import io.minecloud.db.redis.msg.Message;
-import io.minecloud.db.redis.msg.MessageType;
-import org.json.JSONObject;
 import redis.clients.jedis.BinaryJedisPubSub;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.Charset;
-import java.util.logging.Level;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Reads the messages of every channel on the subscription connection, see {@link SubscriptionManager}
+ */
 public final class ChannelPubSub extends BinaryJedisPubSub {
-    private final RedisChannel channel;
+    private final SubscriptionManager manager;
 
-    private ChannelPubSub(RedisChannel channel) {
-        this.channel = channel;
+    private ChannelPubSub(SubscriptionManager manager) {
+        this.manager = manager;
     }
 
-    static ChannelPubSub create(RedisChannel channel) {
-        return new ChannelPubSub(channel);
+    static ChannelPubSub create(SubscriptionManager manager) {
+        return new ChannelPubSub(manager);
     }
 
     @Override
     public void onMessage(byte[] c, byte[] message) {
-        MessageType type = MessageType.BINARY;
-
-        try (InputStream stream = new ByteArrayInputStream(message)){
-            type = MessageType.values()[stream.read()];
-            byte[] data = new byte[message.length - 1];
+        RedisChannel channel = manager.channelBy(new String(c, StandardCharsets.UTF_8));
 
-            stream.read(data);
+        if (channel == null) {
+            return;
+        }
 
-            switch (type) {
-                case BINARY:
-                    channel.handle(Message.messageFrom(data));
-                    break;
+        if (Message.originOf(message) == channel.database.origin()) {
+            channel.metrics().echoDropped(); // already delivered locally when published
+            return;
+        }
 
-                case JSON:
-                    channel.handle(Message.messageFrom(new JSONObject(new String(data, Charset.forName("UTF-8")))));
-                    break;
+        channel.receive(message);
+    }
 
-                case STRING:
-                    channel.handle(Message.messageFrom(new String(data, Charset.forName("UTF-8"))));
-                    break;
-            }
-        } catch (IOException ex) {
-            MineCloud.logger().log(Level.WARNING,
-                    "Encountered an IOException while reading a " + type.name() + " message",
-                    ex);
-        }
+    @Override
+    public void onSubscribe(byte[] channel, int subscribedChannels) {
+        manager.confirmed(this, new String(channel, StandardCharsets.UTF_8));
     }
 
     @Override
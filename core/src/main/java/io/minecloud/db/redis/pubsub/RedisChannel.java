@@ -15,18 +15,34 @@
  */
 package io.minecloud.db.redis.pubsub;
 
+import io.minecloud.MineCloud;
 import io.minecloud.db.redis.RedisDatabase;
 import io.minecloud.db.redis.msg.Message;
-import redis.clients.jedis.Jedis;
+import io.minecloud.db.redis.msg.MessageType;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.schema.MessageRegistry;
+import io.minecloud.db.redis.msg.schema.Schema;
+import io.minecloud.db.redis.msg.schema.SchemaMessage;
 
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
+/**
+ * Channel subscribed through the {@link SubscriptionManager} of its database. Received messages, and messages
+ * published to local subscribers, are handled in the executor of the lane of the channel, one at a time and in the
+ * order they were received.
+ */
 public abstract class RedisChannel {
     private static ExecutorService executor = Executors.newFixedThreadPool(Integer.getInteger("minecloud.redis-executor-threads", 8), new ThreadFactory() {
         private final AtomicInteger counter = new AtomicInteger();
@@ -37,10 +53,27 @@ public abstract class RedisChannel {
         }
     });
 
+    // unbounded, so high priority channels never wait for a thread behind the normal lane
+    private static final ExecutorService PRIORITY_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, String.format("MineCloud - Redis Priority Thread #%d", counter.incrementAndGet()));
+
+            thread.setPriority(Thread.NORM_PRIORITY + 2);
+            return thread;
+        }
+    });
+
     public static ExecutorService getExecutor() {
         return executor;
     }
 
+    public static ExecutorService getExecutor(Priority priority) {
+        return priority == Priority.HIGH ? PRIORITY_EXECUTOR : executor;
+    }
+
     public static void setExecutor(ExecutorService executor) {
         if (executor == null) {
             throw new IllegalArgumentException("executor must not be null");
@@ -50,26 +83,168 @@ public abstract class RedisChannel {
 
     protected final RedisDatabase database;
     protected final String channel;
+    protected final Priority priority;
+    private final byte[] channelBytes;
+    private final ChannelMetrics metrics;
+    private final CompletableFuture<Void> subscribed = new CompletableFuture<>();
+    private final Queue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final List<Runnable> resubscribeListeners = new CopyOnWriteArrayList<>();
 
     protected RedisChannel(String channel, RedisDatabase database) {
+        this(channel, database, Priority.NORMAL);
+    }
+
+    protected RedisChannel(String channel, RedisDatabase database, Priority priority) {
         this.database = database;
         this.channel = channel;
+        this.priority = priority;
+        this.channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        this.metrics = new ChannelMetrics(channel);
 
-        executor.submit(() -> {
-            try (Jedis resource = database.grabResource()) {
-                resource.subscribe(ChannelPubSub.create(this), channel.getBytes(StandardCharsets.UTF_8));
-            }
-        });
+        database.subscriptions().subscribe(this);
     }
 
     public String channel() {
         return channel;
     }
 
+    public Priority priority() {
+        return priority;
+    }
+
+    public ChannelMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Completes once Redis has confirmed the subscription to this channel, any message published
+     * before then will not be received by this channel.
+     *
+     * @return future completed on subscription
+     */
+    public CompletableFuture<Void> subscribed() {
+        return subscribed;
+    }
+
+    /**
+     * Runs the listener whenever this channel is subscribed again after losing the connection, messages
+     * published while disconnected are lost so state derived from them may have to be discarded.
+     */
+    public RedisChannel onResubscribe(Runnable listener) {
+        resubscribeListeners.add(listener);
+        return this;
+    }
+
+    void markSubscribed() {
+        if (!subscribed.complete(null)) {
+            metrics.resubscribed();
+            resubscribeListeners.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Publishes the message to every subscriber of this channel. Subscribers in this instance get
+     * the message without the round trip through Redis, queued behind the messages received before it.
+     */
     public void publish(Message message) {
-        try (Jedis resource = database.grabResource()) {
-            resource.publish(channel.getBytes(Charset.forName("UTF-8")), message.raw());
+        long start = System.nanoTime();
+        boolean local = hasLocalSubscribers();
+        byte[] frame = message.raw();
+
+        if (local) {
+            deliverLocally(frame);
+        }
+
+        database.publish(channelBytes, frame, local, priorityOf(message));
+        metrics.published(start);
+    }
+
+    public void publish(SchemaMessage message) {
+        long start = System.nanoTime();
+        boolean local = hasLocalSubscribers();
+        byte[] frame = Message.encode(message, local ? database.origin() : 0);
+        Priority lane = priority.max(MessageRegistry.schemaBy(message.getClass()).priority());
+
+        if (local) {
+            deliverLocally(frame);
         }
+
+        database.publish(channelBytes, frame, local, lane);
+        metrics.published(start);
+    }
+
+    /**
+     * Queues a message received from Redis, which is handled after the ones received before it
+     */
+    void receive(byte[] message) {
+        metrics.messageReceived();
+        enqueue(message);
+    }
+
+    private void enqueue(byte[] message) {
+        inbox.add(message);
+
+        if (draining.compareAndSet(false, true)) {
+            getExecutor(priority).execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        do {
+            byte[] message;
+
+            while ((message = inbox.poll()) != null) {
+                deliver(message);
+            }
+
+            draining.set(false);
+        } while (!inbox.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void deliver(byte[] message) {
+        long start = System.nanoTime();
+        Message decoded;
+
+        try {
+            decoded = Message.decode(message);
+        } catch (RuntimeException ex) {
+            metrics.decodeFailed();
+            MineCloud.logger().log(Level.WARNING, "Received an invalid message on " + channel, ex);
+            return;
+        }
+
+        long handleStart = System.nanoTime();
+
+        metrics.decoded(start);
+        metrics.handling(handleStart);
+
+        try {
+            handle(decoded);
+        } catch (RuntimeException ex) {
+            MineCloud.logger().log(Level.SEVERE, "Could not handle a message on " + channel, ex);
+        } finally {
+            metrics.handled(handleStart);
+        }
+    }
+
+    private Priority priorityOf(Message message) {
+        Schema<?> schema = message.type() == MessageType.SCHEMA ? MessageRegistry.schemaBy(message.id()) : null;
+
+        return schema == null ? priority : priority.max(schema.priority());
+    }
+
+    // handled like a received message, so it never runs on the publishing thread or ahead of earlier messages
+    private void deliverLocally(byte[] frame) {
+        metrics.deliveredLocally();
+        enqueue(frame);
+    }
+
+    /**
+     * @return Whether messages published from this instance should be handled by this channel directly
+     */
+    protected boolean hasLocalSubscribers() {
+        return false;
     }
 
     public abstract void handle(Message message);
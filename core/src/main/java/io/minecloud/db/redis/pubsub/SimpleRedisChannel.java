@@ -18,6 +18,8 @@ package io.minecloud.db.redis.pubsub;
 import io.minecloud.MineCloudException;
 import io.minecloud.db.redis.RedisDatabase;
 import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.schema.SchemaMessage;
 
 import java.io.IOException;
 import java.util.LinkedList;
@@ -26,12 +28,16 @@ import java.util.List;
 public class SimpleRedisChannel extends RedisChannel {
     private List<ChannelCallback> callbacks = new LinkedList<>();
 
-    private SimpleRedisChannel(String channel, RedisDatabase database) {
-        super(channel, database);
+    private SimpleRedisChannel(String channel, RedisDatabase database, Priority priority) {
+        super(channel, database, priority);
     }
 
     public static SimpleRedisChannel create(String channel, RedisDatabase database) {
-        return new SimpleRedisChannel(channel, database);
+        return create(channel, database, Priority.NORMAL);
+    }
+
+    public static SimpleRedisChannel create(String channel, RedisDatabase database, Priority priority) {
+        return new SimpleRedisChannel(channel, database, priority);
     }
 
     public SimpleRedisChannel addCallback(ChannelCallback callback) {
@@ -39,6 +45,17 @@ public class SimpleRedisChannel extends RedisChannel {
         return this;
     }
 
+    /**
+     * Adds a callback which is only called for messages of the provided type, decoded through its schema
+     */
+    public <T extends SchemaMessage> SimpleRedisChannel addCallback(Class<T> type, TypedCallback<T> callback) {
+        return addCallback((message) -> {
+            if (message.is(type)) {
+                callback.call(message.as(type));
+            }
+        });
+    }
+
     public void removeCallback(int index) {
         callbacks.remove(index);
     }
@@ -47,14 +64,30 @@ public class SimpleRedisChannel extends RedisChannel {
         callbacks.remove(callback);
     }
 
+    @Override
+    protected boolean hasLocalSubscribers() {
+        return !callbacks.isEmpty();
+    }
+
+    /**
+     * Calls every callback with the message on the executor of the channel; messages published by this
+     * instance are queued with the received ones and handled in the same order
+     */
     @Override
     public void handle(Message message) {
-        callbacks.forEach((c) -> {
+        int index = 0;
+
+        for (ChannelCallback callback : callbacks) {
+            long start = System.nanoTime();
+
             try {
-                c.call(message);
+                callback.call(message);
             } catch (Exception ex) {
+                metrics().callbackFailed();
                 new MineCloudException(ex).printStackTrace();
             }
-        });
+
+            metrics().callbackLatency(index++).recordSince(start);
+        }
     }
 }
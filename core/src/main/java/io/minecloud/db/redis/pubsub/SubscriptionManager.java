@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.pubsub;
+
+import io.minecloud.MineCloud;
+import io.minecloud.db.redis.RedisDatabase;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * <p>
+ * Holds the subscriptions of every channel on one dedicated connection to the master, opened outside of the
+ * command pools so subscribing never takes connections away from publishers. A single thread reads the
+ * connection and hands each message to its channel, which handles it in its own lane, see {@link RedisChannel}.
+ * </p>
+ *
+ * When the connection is lost it is reopened with backoff, to the new master after a failover, and every
+ * channel is subscribed again. Messages published while disconnected are lost.
+ */
+public final class SubscriptionManager {
+    private static final long RESUBSCRIBE_BACKOFF = 100;
+    private static final long MAX_RESUBSCRIBE_BACKOFF = 5000;
+
+    private final RedisDatabase database;
+    private final Map<String, RedisChannel> channels = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    // channels requested on the current connection, guarded by lock
+    private final Set<String> requested = new HashSet<>();
+    private ChannelPubSub active;
+    private Thread thread;
+    private volatile boolean connected;
+    private int failures;
+
+    private SubscriptionManager(RedisDatabase database) {
+        this.database = database;
+
+        MineCloud.metrics().gauge("redis.subscriptions.channels", channels::size);
+        MineCloud.metrics().gauge("redis.subscriptions.connected", () -> connected);
+    }
+
+    public static SubscriptionManager create(RedisDatabase database) {
+        return new SubscriptionManager(database);
+    }
+
+    /**
+     * Subscribes the channel, on the current connection if there is one. The channel is notified through
+     * {@link RedisChannel#subscribed()} once Redis confirmed it.
+     */
+    public void subscribe(RedisChannel channel) {
+        synchronized (lock) {
+            channels.put(channel.channel(), channel);
+
+            if (thread == null) {
+                thread = new Thread(this::run, "MineCloud - Redis Subscription Thread");
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            if (active != null && connected) {
+                request(active, channel.channel());
+            }
+
+            lock.notifyAll();
+        }
+    }
+
+    public boolean connected() {
+        return connected;
+    }
+
+    RedisChannel channelBy(String name) {
+        return channels.get(name);
+    }
+
+    /**
+     * Called by the reading thread once Redis confirmed a subscription, requests the channels which were
+     * added while the connection was being opened
+     */
+    void confirmed(ChannelPubSub pubSub, String name) {
+        synchronized (lock) {
+            connected = true;
+            failures = 0;
+
+            channels.keySet().stream()
+                    .filter((channel) -> !requested.contains(channel))
+                    .forEach((channel) -> request(pubSub, channel));
+        }
+
+        RedisChannel channel = channels.get(name);
+
+        if (channel != null) {
+            channel.markSubscribed();
+        }
+    }
+
+    private void request(ChannelPubSub pubSub, String channel) {
+        requested.add(channel);
+        pubSub.subscribe(channel.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            ChannelPubSub pubSub = ChannelPubSub.create(this);
+            byte[][] initial;
+
+            synchronized (lock) {
+                while (channels.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {
+                        return;
+                    }
+                }
+
+                requested.clear();
+                requested.addAll(channels.keySet());
+                initial = requested.stream()
+                        .map((channel) -> channel.getBytes(StandardCharsets.UTF_8))
+                        .toArray(byte[][]::new);
+                active = pubSub;
+            }
+
+            try (Jedis connection = database.openConnection(0)) {
+                connection.subscribe(pubSub, initial);
+            } catch (JedisException ex) {
+                MineCloud.logger().log(failures == 0 ? Level.WARNING : Level.FINE,
+                        "Lost the Redis subscription connection, resubscribing " + channels.size() + " channels", ex);
+            }
+
+            synchronized (lock) {
+                active = null;
+                connected = false;
+            }
+
+            try {
+                Thread.sleep(Math.min(RESUBSCRIBE_BACKOFF << Math.min(failures++, 16), MAX_RESUBSCRIBE_BACKOFF));
+            } catch (InterruptedException ignored) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.registry;
+
+import io.minecloud.MineCloud;
+import io.minecloud.db.redis.RedisDatabase;
+import io.minecloud.db.redis.msg.types.RegistryEvent;
+import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * <p>
+ * Keeps a local copy of a {@link ServerRegistry} and reports its changes to a listener. Events are applied
+ * strictly in sequence; whenever one is missing, whether lost while disconnected or received out of order,
+ * the follower replays the log from its last sequence number or, if the log no longer reaches back that far,
+ * reconciles against the snapshot.
+ * </p>
+ *
+ * The follower also compares its sequence number with the registry every {@link #CHECK_INTERVAL} seconds,
+ * which catches gaps at the end of the log no later event would reveal.
+ */
+public final class RegistryFollower {
+    public static final int CHECK_INTERVAL = Integer.getInteger("minecloud.registry-check-interval", 15);
+    private static final ScheduledExecutorService CHECKS = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "MineCloud - Registry Check Thread");
+
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ServerRegistry registry;
+    private final RegistryListener listener;
+    private final Map<String, String> servers = new HashMap<>();
+    private int sequence = -1;
+    private ScheduledFuture<?> check;
+
+    private RegistryFollower(ServerRegistry registry, RegistryListener listener) {
+        this.registry = registry;
+        this.listener = listener;
+    }
+
+    public static RegistryFollower create(ServerRegistry registry, RegistryListener listener) {
+        return new RegistryFollower(registry, listener);
+    }
+
+    /**
+     * Subscribes to the registry and catches up once subscribed, which is also done after every resubscribe
+     */
+    public RegistryFollower start(RedisDatabase redis) {
+        SimpleRedisChannel channel = SimpleRedisChannel.create(registry.channel(), redis)
+                .addCallback(RegistryEvent.class, this::apply);
+
+        channel.onResubscribe(() -> CHECKS.execute(this::check)); // events published while disconnected are lost
+        redis.addChannel(channel);
+        channel.subscribed().thenRun(this::catchUp);
+        check = CHECKS.scheduleAtFixedRate(this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+        return this;
+    }
+
+    public void stop() {
+        if (check != null) {
+            check.cancel(false);
+        }
+    }
+
+    /**
+     * @return The last sequence number applied, or -1 before the first catch up
+     */
+    public synchronized int sequence() {
+        return sequence;
+    }
+
+    public synchronized Map<String, String> servers() {
+        return new HashMap<>(servers);
+    }
+
+    private synchronized void apply(RegistryEvent event) {
+        if (event.sequence() <= sequence) {
+            return; // already applied, through a catch up
+        }
+
+        if (sequence == -1 || event.sequence() != sequence + 1) {
+            catchUp();
+            return;
+        }
+
+        applyChange(event.server(), event.address());
+        sequence = event.sequence();
+    }
+
+    private void check() {
+        try {
+            int current = registry.sequence();
+
+            synchronized (this) {
+                if (current != sequence) {
+                    catchUp();
+                }
+            }
+        } catch (Exception ex) {
+            MineCloud.logger().log(Level.WARNING, "Could not check registry of " + registry.network(), ex);
+        }
+    }
+
+    private synchronized void catchUp() {
+        List<RegistryEvent> events = sequence == -1 ? null : registry.since(sequence);
+
+        if (events != null) {
+            for (RegistryEvent event : events) {
+                applyChange(event.server(), event.address());
+                sequence = event.sequence();
+            }
+
+            return;
+        }
+
+        ServerRegistry.Snapshot snapshot = registry.snapshot();
+        Map<String, String> latest = snapshot.servers();
+
+        new ArrayList<>(servers.keySet()).stream()
+                .filter((server) -> !latest.containsKey(server))
+                .forEach((server) -> applyChange(server, null));
+        latest.forEach(this::applyChange);
+
+        sequence = snapshot.sequence();
+    }
+
+    private void applyChange(String server, String address) {
+        if (address == null) {
+            if (servers.remove(server) != null) {
+                notify(() -> listener.removed(server));
+            }
+
+            return;
+        }
+
+        if (address.equals(servers.put(server, address))) {
+            return;
+        }
+
+        int separator = address.lastIndexOf(':');
+        String host = address.substring(0, separator);
+        int port = Integer.parseInt(address.substring(separator + 1));
+
+        notify(() -> listener.added(server, host, port));
+    }
+
+    private void notify(Runnable call) {
+        try {
+            call.run();
+        } catch (Exception ex) {
+            MineCloud.logger().log(Level.SEVERE, "Registry listener failed", ex);
+        }
+    }
+}
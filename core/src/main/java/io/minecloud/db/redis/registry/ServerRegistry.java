@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.registry;
+
+import io.minecloud.db.redis.RedisDatabase;
+import io.minecloud.db.redis.msg.types.RegistryEvent;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Versioned registry of the servers of a network, which proxies can follow without scanning Mongo. Every change
+ * takes the next sequence number of the network and is applied to a snapshot, appended to a bounded log and
+ * published on the registry:[network] channel, in one step.
+ * </p>
+ *
+ * Keys: registry:[network]:seq (last sequence), registry:[network]:snapshot (hash of server to host:port)
+ * and registry:[network]:log (sorted set of "[seq] [server] [host:port]" scored by seq).
+ */
+public final class ServerRegistry {
+    private static final int LOG_SIZE = Integer.getInteger("minecloud.registry-log-size", 1024);
+    private static final String APPEND_SCRIPT =
+            "local seq = redis.call('incr', KEYS[1]) " +
+            "if ARGV[2] == '' then redis.call('hdel', KEYS[2], ARGV[1]) " +
+            "else redis.call('hset', KEYS[2], ARGV[1], ARGV[2]) end " +
+            "redis.call('zadd', KEYS[3], seq, seq .. ' ' .. ARGV[1] .. ' ' .. ARGV[2]) " +
+            "redis.call('zremrangebyrank', KEYS[3], 0, -tonumber(ARGV[3]) - 1) " +
+            "return seq";
+
+    private final RedisDatabase redis;
+    private final String network;
+    private final String sequenceKey;
+    private final String snapshotKey;
+    private final String logKey;
+
+    private ServerRegistry(RedisDatabase redis, String network) {
+        this.redis = redis;
+        this.network = network;
+        this.sequenceKey = "registry:" + network + ":seq";
+        this.snapshotKey = "registry:" + network + ":snapshot";
+        this.logKey = "registry:" + network + ":log";
+    }
+
+    public static ServerRegistry create(RedisDatabase redis, String network) {
+        return new ServerRegistry(redis, network);
+    }
+
+    public String network() {
+        return network;
+    }
+
+    public String channel() {
+        return "registry:" + network;
+    }
+
+    /**
+     * Registers a server which is ready for players
+     *
+     * @return The sequence number of the change
+     */
+    public int add(String server, String host, int port) {
+        return append(server, host + ":" + port);
+    }
+
+    public int remove(String server) {
+        return append(server, null);
+    }
+
+    private int append(String server, String address) {
+        Object sequence = redis.execute((jedis) -> jedis.eval(APPEND_SCRIPT,
+                Arrays.asList(sequenceKey, snapshotKey, logKey),
+                Arrays.asList(server, address == null ? "" : address, String.valueOf(LOG_SIZE))));
+        int seq = ((Long) sequence).intValue();
+
+        redis.channelBy(channel()).publish(new RegistryEvent(network, seq, server, address));
+        return seq;
+    }
+
+    /**
+     * @return The sequence number of the last change, 0 if there never was one
+     */
+    public int sequence() {
+        String sequence = redis.execute((jedis) -> jedis.get(sequenceKey));
+
+        return sequence == null ? 0 : Integer.parseInt(sequence);
+    }
+
+    /**
+     * @return The servers of the network as of the returned sequence number
+     */
+    public Snapshot snapshot() {
+        return redis.execute((jedis) -> {
+            Transaction transaction = jedis.multi();
+            Response<String> sequence = transaction.get(sequenceKey);
+            Response<Map<String, String>> servers = transaction.hgetAll(snapshotKey);
+
+            transaction.exec();
+            return new Snapshot(sequence.get() == null ? 0 : Integer.parseInt(sequence.get()), servers.get());
+        });
+    }
+
+    /**
+     * @return Every change after the provided sequence number in order, or null if the log no longer reaches
+     * back that far, in which case the follower must start over from a {@link #snapshot()}
+     */
+    public List<RegistryEvent> since(int sequence) {
+        return redis.execute((jedis) -> {
+            Transaction transaction = jedis.multi();
+            Response<String> last = transaction.get(sequenceKey);
+            Response<Set<String>> entries = transaction.zrangeByScore(logKey, "(" + sequence, "+inf");
+
+            transaction.exec();
+
+            int current = last.get() == null ? 0 : Integer.parseInt(last.get());
+            List<RegistryEvent> events = new ArrayList<>();
+
+            for (String entry : entries.get()) {
+                String[] parts = entry.split(" ", 3);
+
+                events.add(new RegistryEvent(network, Integer.parseInt(parts[0]), parts[1],
+                        parts.length < 3 || parts[2].isEmpty() ? null : parts[2]));
+            }
+
+            // the log was trimmed past the sequence, or the registry was reset
+            if (current < sequence || (current > sequence &&
+                    (events.isEmpty() || events.get(0).sequence() != sequence + 1))) {
+                return null;
+            }
+
+            return events;
+        });
+    }
+
+    public static final class Snapshot {
+        private final int sequence;
+        private final Map<String, String> servers;
+
+        private Snapshot(int sequence, Map<String, String> servers) {
+            this.sequence = sequence;
+            this.servers = servers;
+        }
+
+        public int sequence() {
+            return sequence;
+        }
+
+        /**
+         * @return The host:port of every server, by name
+         */
+        public Map<String, String> servers() {
+            return servers;
+        }
+    }
+}
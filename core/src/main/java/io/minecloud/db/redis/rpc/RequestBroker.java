@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.rpc;
+
+import io.minecloud.MineCloud;
+import io.minecloud.MineCloudException;
+import io.minecloud.db.redis.RedisDatabase;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.MessageType;
+import io.minecloud.db.redis.msg.binary.MessageInputStream;
+import io.minecloud.db.redis.msg.binary.MessageOutputStream;
+import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * <p>
+ * Request/response layer on top of pub/sub. A request is published on the target channel wrapped in an envelope
+ * holding the reply channel of the requester and a correlation id; responders answer on the reply channel,
+ * which completes the future of the matching request.
+ * </p>
+ *
+ * Envelope: [reply channel][correlation id][payload message]
+ * Reply:    [correlation id][status byte][payload message | error string]
+ */
+public final class RequestBroker {
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "MineCloud - Request Timeout Thread");
+
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int REPLY_OK = 0;
+    private static final int REPLY_ERROR = 1;
+
+    private final Map<String, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong counter = new AtomicLong();
+    private final RedisDatabase database;
+    private final String replyChannel;
+    private SimpleRedisChannel replies;
+
+    private RequestBroker(RedisDatabase database) {
+        this.database = database;
+        this.replyChannel = "reply:" + UUID.randomUUID();
+    }
+
+    public static RequestBroker create(RedisDatabase database) {
+        return new RequestBroker(database);
+    }
+
+    public CompletableFuture<Message> request(String channel, Message message, long timeout, TimeUnit unit) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        String id = String.valueOf(counter.incrementAndGet());
+        MessageOutputStream os = MessageOutputStream.acquireFrame();
+        Message envelope;
+
+        try {
+            os.writeString(replyChannel);
+            os.writeString(id);
+            os.writeMessage(message);
+            envelope = os.toMessage();
+        } catch (IOException ex) {
+            future.completeExceptionally(new MineCloudException("Could not encode request", ex));
+            return future;
+        } finally {
+            os.release();
+        }
+
+        pending.put(id, future);
+
+        ScheduledFuture<?> timeoutTask = TIMEOUTS.schedule(() -> future.completeExceptionally(
+                new TimeoutException("No reply to request " + id + " on " + channel)), timeout, unit);
+
+        future.whenComplete((reply, error) -> {
+            pending.remove(id);
+            timeoutTask.cancel(false);
+        });
+
+        replies().subscribed()
+                .thenRun(() -> database.publish(channel, envelope))
+                .exceptionally((error) -> {
+                    future.completeExceptionally(error);
+                    return null;
+                });
+
+        return future;
+    }
+
+    public void respond(String channel, RequestHandler handler) {
+        database.addChannel(SimpleRedisChannel.create(channel, database).addCallback((message) -> {
+            if (message.type() != MessageType.BINARY) {
+                return;
+            }
+
+            MessageInputStream stream = message.contents();
+            String replyTo = stream.readString();
+            String id = stream.readString();
+            CompletableFuture<Message> response;
+
+            try {
+                response = handler.handle(stream.readMessage());
+            } catch (Exception ex) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(ex);
+            }
+
+            if (response == null) {
+                return;
+            }
+
+            response.whenComplete((reply, error) -> {
+                try {
+                    database.publish(replyTo, encodeReply(id, reply, error));
+                } catch (Exception ex) {
+                    MineCloud.logger().log(Level.WARNING, "Was unable to reply to request " + id + " on " + channel, ex);
+                }
+            });
+        }));
+    }
+
+    private synchronized SimpleRedisChannel replies() {
+        if (replies == null) {
+            replies = SimpleRedisChannel.create(replyChannel, database).addCallback(this::complete);
+            database.addChannel(replies);
+        }
+
+        return replies;
+    }
+
+    private void complete(Message reply) throws IOException {
+        if (reply.type() != MessageType.BINARY) {
+            return;
+        }
+
+        MessageInputStream stream = reply.contents();
+        CompletableFuture<Message> future = pending.get(stream.readString());
+
+        if (future == null) {
+            return; // timed out already
+        }
+
+        if (stream.read() == REPLY_OK) {
+            future.complete(stream.readMessage());
+        } else {
+            future.completeExceptionally(new MineCloudException(stream.readString()));
+        }
+    }
+
+    private static Message encodeReply(String id, Message reply, Throwable error) throws IOException {
+        MessageOutputStream os = MessageOutputStream.acquireFrame();
+
+        try {
+            return encodeReply(os, id, reply, error);
+        } finally {
+            os.release();
+        }
+    }
+
+    private static Message encodeReply(MessageOutputStream os, String id, Message reply, Throwable error) throws IOException {
+        os.writeString(id);
+
+        if (error == null && reply != null) {
+            os.write(REPLY_OK);
+            os.writeMessage(reply);
+        } else {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+
+            os.write(REPLY_ERROR);
+            os.writeString(cause == null ? "Responder did not produce a reply" : String.valueOf(cause.getMessage()));
+        }
+
+        return os.toMessage();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.metrics;
+
+import io.minecloud.MineCloudException;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named counters, histograms and gauges of this process. Names are dot separated, starting with
+ * the component, e.g. redis.channel.teleport.received
+ */
+public final class MetricRegistry {
+    private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+    public Counter counter(String name) {
+        return metric(name, Counter.class);
+    }
+
+    public Histogram histogram(String name) {
+        return metric(name, Histogram.class);
+    }
+
+    public void gauge(String name, Gauge gauge) {
+        metrics.put(name, gauge);
+    }
+
+    public void remove(String prefix) {
+        metrics.keySet().removeIf((name) -> name.startsWith(prefix));
+    }
+
+    /**
+     * @return The current value of every metric by name, histograms formatted through {@link Histogram#toString()}
+     */
+    public SortedMap<String, String> snapshot() {
+        SortedMap<String, String> snapshot = new TreeMap<>();
+
+        metrics.forEach((name, metric) -> {
+            Object value;
+
+            if (metric instanceof Counter) {
+                value = ((Counter) metric).count();
+            } else if (metric instanceof Gauge) {
+                try {
+                    value = ((Gauge) metric).value();
+                } catch (Exception ex) {
+                    value = "error: " + ex.getMessage();
+                }
+            } else {
+                value = metric;
+            }
+
+            snapshot.put(name, String.valueOf(value));
+        });
+
+        return snapshot;
+    }
+
+    private <T> T metric(String name, Class<T> type) {
+        Object metric = metrics.get(name);
+
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(name, (key) -> type == Counter.class ? new Counter() : new Histogram());
+        }
+
+        if (!type.isInstance(metric)) {
+            throw new MineCloudException(name + " is already registered as a " + metric.getClass().getSimpleName());
+        }
+
+        return type.cast(metric);
+    }
+}
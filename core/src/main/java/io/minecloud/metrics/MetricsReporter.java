@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.metrics;
+
+import io.minecloud.MineCloud;
+import io.minecloud.db.redis.RedisDatabase;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * <p>
+ * Periodically publishes the {@link MetricRegistry} of this process to Redis, so it can be queried from
+ * anywhere (see the metrics command of the CLI).
+ * </p>
+ *
+ * Layout: hash metrics:[instance] holding the snapshot, expiring if the process stops reporting,
+ * and sorted set metrics:instances of instances scored by the time of their last report.
+ */
+public final class MetricsReporter {
+    public static final String INSTANCES_KEY = "metrics:instances";
+    private static final int INTERVAL = Integer.getInteger("minecloud.metrics-interval", 10);
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "MineCloud - Metrics Reporter");
+
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RedisDatabase redis;
+    private final MetricRegistry registry;
+    private final String instance;
+    private ScheduledFuture<?> task;
+
+    private MetricsReporter(RedisDatabase redis, MetricRegistry registry) {
+        this.redis = redis;
+        this.registry = registry;
+        this.instance = ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    public static MetricsReporter create(RedisDatabase redis, MetricRegistry registry) {
+        return new MetricsReporter(redis, registry);
+    }
+
+    public synchronized void start() {
+        if (task == null) {
+            task = EXECUTOR.scheduleAtFixedRate(this::report, INTERVAL, INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    public String instance() {
+        return instance;
+    }
+
+    public void report() {
+        Map<String, String> snapshot = registry.snapshot();
+        String key = "metrics:" + instance;
+
+        if (snapshot.isEmpty()) {
+            return;
+        }
+
+        try (Jedis jedis = redis.grabResource()) {
+            Pipeline pipeline = jedis.pipelined();
+
+            pipeline.del(key);
+            pipeline.hmset(key, snapshot);
+            pipeline.expire(key, INTERVAL * 3);
+            pipeline.zadd(INSTANCES_KEY, System.currentTimeMillis(), instance);
+            pipeline.zremrangeByScore(INSTANCES_KEY, 0, cutoff());
+            pipeline.sync();
+        } catch (Exception ex) {
+            MineCloud.logger().log(Level.FINE, "Was unable to report metrics", ex);
+        }
+    }
+
+    /**
+     * Reads from a replica when one is available, see {@link RedisDatabase#grabReadResource()}
+     *
+     * @return The last reported metrics of every instance which reported recently, by instance
+     */
+    public static SortedMap<String, Map<String, String>> read(RedisDatabase redis) {
+        SortedMap<String, Map<String, String>> metrics = new TreeMap<>();
+
+        try (Jedis jedis = redis.grabReadResource()) {
+            for (String instance : jedis.zrangeByScore(INSTANCES_KEY, cutoff(), Double.POSITIVE_INFINITY)) {
+                Map<String, String> values = jedis.hgetAll("metrics:" + instance);
+
+                if (!values.isEmpty()) {
+                    metrics.put(instance, new TreeMap<>(values));
+                }
+            }
+        }
+
+        return metrics;
+    }
+
+    private static long cutoff() {
+        return System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(INTERVAL * 3);
+    }
+}
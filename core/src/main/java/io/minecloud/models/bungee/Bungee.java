@@ -17,24 +17,33 @@ package io.minecloud.models.bungee;
 
 import io.minecloud.db.mongo.model.MongoEntity;
 import io.minecloud.models.bungee.type.BungeeType;
+import io.minecloud.models.bungee.type.BungeeTypeSnapshot;
 import io.minecloud.models.network.Network;
 import io.minecloud.models.nodes.Node;
+import io.minecloud.models.nodes.NodeSnapshot;
 import lombok.EqualsAndHashCode;
 import lombok.Setter;
 import org.mongodb.morphia.annotations.Entity;
+import org.mongodb.morphia.annotations.Index;
+import org.mongodb.morphia.annotations.Indexes;
 import org.mongodb.morphia.annotations.Reference;
 
 @Entity(value = "bungees", noClassnameStored = true)
+@Indexes({
+        @Index("network, type"),
+        @Index("type"),
+        @Index("node")
+})
 public class Bungee extends MongoEntity {
     @Reference(lazy = true)
     @Setter
     private Network network;
     @Reference(lazy = true)
-    @Setter
     private BungeeType type;
+    private BungeeTypeSnapshot typeSnapshot;
     @Reference(lazy = true)
-    @Setter
     private Node node;
+    private NodeSnapshot nodeSnapshot;
     @Setter
     private String publicIp;
 
@@ -54,15 +63,47 @@ public class Bungee extends MongoEntity {
         return node;
     }
 
+    /**
+     * @return The fields of the type read on hot paths, without dereferencing it
+     */
+    public BungeeTypeSnapshot typeSnapshot() {
+        if (typeSnapshot == null && type != null) {
+            typeSnapshot = new BungeeTypeSnapshot(type); // saved before snapshots were embedded
+        }
+
+        return typeSnapshot;
+    }
+
+    /**
+     * @return The fields of the node read on hot paths, without dereferencing it
+     */
+    public NodeSnapshot nodeSnapshot() {
+        if (nodeSnapshot == null && node != null) {
+            nodeSnapshot = new NodeSnapshot(node);
+        }
+
+        return nodeSnapshot;
+    }
+
     public String publicIp() {
         return publicIp;
     }
 
     public int ramUsage() {
-        return type.dedicatedRam();
+        return typeSnapshot().dedicatedRam();
     }
 
     public String name() {
-        return type.name() + "." + publicIp();
+        return typeSnapshot().name() + "." + publicIp();
+    }
+
+    public void setType(BungeeType type) {
+        this.type = type;
+        this.typeSnapshot = type == null ? null : new BungeeTypeSnapshot(type);
+    }
+
+    public void setNode(Node node) {
+        this.node = node;
+        this.nodeSnapshot = node == null ? null : new NodeSnapshot(node);
     }
 }
@@ -17,12 +17,14 @@ package io.minecloud.models.bungee.type;
 
 import io.minecloud.db.mongo.AbstractMongoRepository;
 import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.models.bungee.Bungee;
 import org.mongodb.morphia.Datastore;
+import org.mongodb.morphia.Key;
 
 public class BungeeTypeRepository extends AbstractMongoRepository<BungeeType> {
 
     private BungeeTypeRepository(Datastore datastore) {
-        super(BungeeType.class, datastore);
+        super(BungeeType.class, datastore, true);
     }
 
     public static BungeeTypeRepository create(Datastore datastore) {
@@ -32,4 +34,20 @@ public class BungeeTypeRepository extends AbstractMongoRepository<BungeeType> {
     public BungeeType typeBy(String name) {
         return findFirst(name);
     }
+
+    /**
+     * Saves the type and refreshes the snapshot of it embedded in its bungees
+     */
+    @Override
+    public Key<BungeeType> save(BungeeType type) {
+        Key<BungeeType> key = super.save(type);
+
+        refreshSnapshots(type);
+        return key;
+    }
+
+    @Override
+    protected int refreshSnapshots(BungeeType type) {
+        return refreshSnapshots(Bungee.class, "type", type, "typeSnapshot", new BungeeTypeSnapshot(type));
+    }
 }
@@ -17,7 +17,10 @@ package io.minecloud.models.network;
 
 import io.minecloud.MineCloud;
 import io.minecloud.db.mongo.model.MongoEntity;
-import io.minecloud.db.redis.msg.binary.MessageOutputStream;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.types.BungeeCreate;
+import io.minecloud.db.redis.msg.types.ServerCreate;
+import io.minecloud.db.redis.msg.types.ServerDeployed;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.bungee.BungeeRepository;
 import io.minecloud.models.bungee.type.BungeeType;
@@ -26,6 +29,7 @@ import io.minecloud.models.network.server.ServerNetworkMetadata;
 import io.minecloud.models.nodes.Node;
 import io.minecloud.models.nodes.NodeRepository;
 import io.minecloud.models.server.Server;
+import io.minecloud.models.server.ServerDeployment;
 import io.minecloud.models.server.ServerMetadata;
 import io.minecloud.models.server.ServerRepository;
 import io.minecloud.models.server.type.ServerType;
@@ -34,11 +38,12 @@ import lombok.Setter;
 import org.mongodb.morphia.annotations.Entity;
 import org.mongodb.morphia.annotations.Reference;
 
-import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Entity(value = "networks", noClassnameStored = true)
 public class Network extends MongoEntity {
@@ -55,42 +60,47 @@ public class Network extends MongoEntity {
             throw new IllegalArgumentException("Cannot deploy " + type + " on network; is not a valid network bungee type!");
         }
 
-        MessageOutputStream os = new MessageOutputStream();
+        MineCloud.instance().redis().channelBy("bungee-create")
+                .publish(new BungeeCreate(node.name(), name(), type.name()));
+    }
 
-        try {
-            os.writeString(node.name());
-            os.writeString(name());
-            os.writeString(type.name());
-        } catch (IOException e) {
-            MineCloud.logger().log(Level.SEVERE, "Encountered an odd exception whilst encoding a message", e);
-            return;
-        }
+    public Node deployServer(ServerType type, ServerMetadata... metadata) {
+        NodeRepository nodeRepo = MineCloud.instance().mongo().repositoryBy(Node.class);
+        Node node = nodeRepo.findNode(this, type.preferredNode(), type.dedicatedRam());
 
-        MineCloud.instance().redis().channelBy("bungee-create").publish(os.toMessage());
+        MineCloud.instance().redis().channelBy("server-create").publish(deployMessage(node, type, metadata));
+        return node;
     }
 
-    public Node deployServer(ServerType type, ServerMetadata... metadata) {
+    /**
+     * Deploys a server like {@link #deployServer(ServerType, ServerMetadata...)}, however waits for the
+     * daemon to reply with the name and port of the deployed server.
+     *
+     * @return Future of the deployment, completed exceptionally if the daemon failed or did not reply within the
+     * timeout of the server type
+     */
+    public CompletableFuture<ServerDeployment> requestServer(ServerType type, ServerMetadata... metadata) {
         NodeRepository nodeRepo = MineCloud.instance().mongo().repositoryBy(Node.class);
-        MessageOutputStream os = new MessageOutputStream();
         Node node = nodeRepo.findNode(this, type.preferredNode(), type.dedicatedRam());
 
-        try {
-            os.writeString(node.name());
-            os.writeString(name());
-            os.writeString(type.name());
-            os.writeVarInt32(metadata.length);
-
-            for (ServerMetadata md : metadata) {
-                os.writeString(md.key());
-                os.writeString(md.value());
-            }
-        } catch (IOException e) {
-            MineCloud.logger().log(Level.SEVERE, "Encountered an odd exception whilst encoding a message", e);
-            return node;
+        return MineCloud.instance().redis()
+                .request("server-deploy", Message.messageFrom(deployMessage(node, type, metadata)),
+                        type.timeOut(), TimeUnit.SECONDS)
+                .thenApply((reply) -> {
+                    ServerDeployed deployed = reply.as(ServerDeployed.class);
+
+                    return new ServerDeployment(deployed.server(), node.name(), deployed.port());
+                });
+    }
+
+    private ServerCreate deployMessage(Node node, ServerType type, ServerMetadata... metadata) {
+        Map<String, String> data = new LinkedHashMap<>();
+
+        for (ServerMetadata md : metadata) {
+            data.put(md.key(), md.value());
         }
 
-        MineCloud.instance().redis().channelBy("server-create").publish(os.toMessage());
-        return node;
+        return new ServerCreate(node.name(), name(), type.name(), data);
     }
 
     public String name() {
@@ -21,7 +21,7 @@ import org.mongodb.morphia.Datastore;
 
 public class NetworkRepository extends AbstractMongoRepository<Network> {
     private NetworkRepository(Datastore datastore) {
-        super(Network.class, datastore);
+        super(Network.class, datastore, true);
     }
 
     public static NetworkRepository create(Datastore datastore) {
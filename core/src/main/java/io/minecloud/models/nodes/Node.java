@@ -17,16 +17,20 @@ package io.minecloud.models.nodes;
 
 import io.minecloud.MineCloud;
 import io.minecloud.db.mongo.model.MongoEntity;
+import io.minecloud.db.redis.LiveState;
+import io.minecloud.db.redis.RedisDatabase;
 import io.minecloud.models.bungee.Bungee;
+import io.minecloud.models.bungee.BungeeRepository;
 import io.minecloud.models.nodes.type.NodeType;
+import io.minecloud.models.nodes.type.NodeTypeSnapshot;
 import io.minecloud.models.server.Server;
+import io.minecloud.models.server.ServerRepository;
 import lombok.Setter;
 import org.mongodb.morphia.annotations.Entity;
 import org.mongodb.morphia.annotations.Reference;
+import org.mongodb.morphia.annotations.Transient;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Entity(value = "nodes", noClassnameStored = true)
 public class Node extends MongoEntity {
@@ -35,12 +39,16 @@ public class Node extends MongoEntity {
     @Setter
     private String privateIp;
     @Reference(lazy = true)
-    @Setter
     private NodeType type;
+    private NodeTypeSnapshot typeSnapshot;
     @Setter
     private double availableRam;
     @Setter
     private List<CoreMetadata> coreMetadata;
+    @Transient
+    private LiveState.NodeState live;
+    @Transient
+    private long liveFetched;
 
     public String name() {
         return entityId();
@@ -58,11 +66,28 @@ public class Node extends MongoEntity {
         return type;
     }
 
+    /**
+     * @return The fields of the type read on hot paths, without dereferencing it
+     */
+    public NodeTypeSnapshot typeSnapshot() {
+        if (typeSnapshot == null && type != null) {
+            typeSnapshot = new NodeTypeSnapshot(type); // saved before snapshots were embedded
+        }
+
+        return typeSnapshot;
+    }
+
+    /**
+     * @return The frequency and usage of every core, from the live state of the node if its daemon is running
+     */
     public List<CoreMetadata> coreMetadata() {
-        return coreMetadata;
+        LiveState.NodeState live = live();
+
+        return live == null ? coreMetadata : live.cores();
     }
 
     public double totalUsage() {
+        List<CoreMetadata> coreMetadata = coreMetadata();
         double total = 0;
 
         for (int i = 0; i < coreMetadata.size(); i++) {
@@ -73,6 +98,8 @@ public class Node extends MongoEntity {
     }
 
     public double usage(int core) {
+        List<CoreMetadata> coreMetadata = coreMetadata();
+
         if (core >= coreMetadata.size()) {
             return -1;
         }
@@ -81,40 +108,61 @@ public class Node extends MongoEntity {
     }
 
     public double allocatedRam() {
-        Collection<Server> servers = MineCloud.instance().mongo()
-                .repositoryBy(Server.class)
-                .findAll((server) -> server.node().name().equals(name()));
-        Collection<Bungee> bungees = MineCloud.instance().mongo()
-                .repositoryBy(Bungee.class)
-                .findAll((bungee) -> bungee.node().name().equals(name()));
         int ramUsed = 0;
 
-        for (Server server : servers) {
-            ramUsed += server.type().dedicatedRam();
+        for (Server server : servers()) {
+            ramUsed += server.typeSnapshot().dedicatedRam();
         }
 
-        for (Bungee bungee : bungees) {
-            ramUsed += bungee.type().dedicatedRam();
+        for (Bungee bungee : bungees()) {
+            ramUsed += bungee.typeSnapshot().dedicatedRam();
         }
 
-        return type.ram() - ramUsed;
+        return typeSnapshot().ram() - ramUsed;
     }
 
     public double availableRam() {
-        return availableRam;
+        LiveState.NodeState live = live();
+
+        return live == null ? availableRam : live.availableRam();
+    }
+
+    private LiveState.NodeState live() {
+        RedisDatabase redis = MineCloud.instance().redis();
+
+        if (redis == null) {
+            return null;
+        }
+
+        if (System.currentTimeMillis() - liveFetched > LiveState.LIFETIME) {
+            live = LiveState.create(redis).node(name());
+            liveFetched = System.currentTimeMillis();
+        }
+
+        return live;
     }
 
     public List<Server> servers() {
-        return MineCloud.instance().mongo().repositoryBy(Server.class).models()
-                .stream()
-                .filter((server) -> server.node().equals(this))
-                .collect(Collectors.toList());
+        ServerRepository repository = MineCloud.instance().mongo().repositoryBy(Server.class);
+
+        return repository.findAll(repository.criteria().where("node").equal(this));
+    }
+
+    public List<Bungee> bungees() {
+        BungeeRepository repository = MineCloud.instance().mongo().repositoryBy(Bungee.class);
+
+        return repository.findAll(repository.criteria().where("node").equal(this));
     }
 
     public int serverCount() {
         return servers().size();
     }
 
+    public void setType(NodeType type) {
+        this.type = type;
+        this.typeSnapshot = type == null ? null : new NodeTypeSnapshot(type);
+    }
+
     public void setName(String name) {
         setId(name);
     }
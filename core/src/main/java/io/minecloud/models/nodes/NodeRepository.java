@@ -16,9 +16,12 @@
 package io.minecloud.models.nodes;
 
 import io.minecloud.db.mongo.AbstractMongoRepository;
+import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.network.Network;
 import io.minecloud.models.nodes.type.NodeType;
+import io.minecloud.models.server.Server;
 import org.mongodb.morphia.Datastore;
+import org.mongodb.morphia.Key;
 
 public class NodeRepository extends AbstractMongoRepository<Node> {
     private NodeRepository(Datastore datastore) {
@@ -74,6 +77,26 @@ public class NodeRepository extends AbstractMongoRepository<Node> {
     }
 
     private boolean isPreferredNode(Node node, Node currentNode, NodeType preferred) {
-        return node.type().equals(preferred) && !currentNode.type().equals(preferred);
+        return preferred != null && node.typeSnapshot().name().equals(preferred.name()) &&
+                !currentNode.typeSnapshot().name().equals(preferred.name());
+    }
+
+    /**
+     * Saves the node and refreshes the snapshot of it embedded in its servers and bungees
+     */
+    @Override
+    public Key<Node> save(Node node) {
+        Key<Node> key = super.save(node);
+
+        refreshSnapshots(node);
+        return key;
+    }
+
+    @Override
+    protected int refreshSnapshots(Node node) {
+        NodeSnapshot snapshot = new NodeSnapshot(node);
+
+        return refreshSnapshots(Server.class, "node", node, "nodeSnapshot", snapshot)
+                + refreshSnapshots(Bungee.class, "node", node, "nodeSnapshot", snapshot);
     }
 }
@@ -17,11 +17,13 @@ package io.minecloud.models.nodes.type;
 
 import io.minecloud.db.mongo.AbstractMongoRepository;
 import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.models.nodes.Node;
 import org.mongodb.morphia.Datastore;
+import org.mongodb.morphia.Key;
 
 public class NodeTypeRepository extends AbstractMongoRepository<NodeType> {
     private NodeTypeRepository(Datastore datastore) {
-        super(NodeType.class, datastore);
+        super(NodeType.class, datastore, true);
     }
 
     public static NodeTypeRepository create(Datastore datastore) {
@@ -31,4 +33,20 @@ public class NodeTypeRepository extends AbstractMongoRepository<NodeType> {
     public NodeType specificationBy(String name) {
         return findFirst(name);
     }
+
+    /**
+     * Saves the type and refreshes the snapshot of it embedded in its nodes
+     */
+    @Override
+    public Key<NodeType> save(NodeType type) {
+        Key<NodeType> key = super.save(type);
+
+        refreshSnapshots(type);
+        return key;
+    }
+
+    @Override
+    protected int refreshSnapshots(NodeType type) {
+        return refreshSnapshots(Node.class, "type", type, "typeSnapshot", new NodeTypeSnapshot(type));
+    }
 }
@@ -20,7 +20,7 @@ import org.mongodb.morphia.Datastore;
 
 public class PluginTypeRepository extends AbstractMongoRepository<PluginType> {
     private PluginTypeRepository(Datastore ds) {
-        super(PluginType.class, ds);
+        super(PluginType.class, ds, true);
     }
 
     public static PluginTypeRepository create(Datastore ds) {
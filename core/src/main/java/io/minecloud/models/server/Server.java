@@ -16,21 +16,29 @@
 package io.minecloud.models.server;
 
 import io.minecloud.MineCloud;
-import io.minecloud.MineCloudException;
 import io.minecloud.db.mongo.model.MongoEntity;
+import io.minecloud.db.redis.LiveState;
+import io.minecloud.db.redis.PlayerPresence;
 import io.minecloud.db.redis.RedisDatabase;
-import io.minecloud.db.redis.msg.binary.MessageOutputStream;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.types.Teleport;
 import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
 import io.minecloud.models.network.Network;
 import io.minecloud.models.nodes.Node;
+import io.minecloud.models.nodes.NodeSnapshot;
 import io.minecloud.models.player.PlayerData;
 import io.minecloud.models.server.type.ServerType;
+import io.minecloud.models.server.type.ServerTypeSnapshot;
 import lombok.EqualsAndHashCode;
 import lombok.Setter;
 import org.mongodb.morphia.annotations.Entity;
+import org.mongodb.morphia.annotations.Index;
+import org.mongodb.morphia.annotations.Indexes;
 import org.mongodb.morphia.annotations.Reference;
+import org.mongodb.morphia.annotations.Transient;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -42,16 +50,21 @@ import java.util.UUID;
  * Any inconsistent changes made to this class will be ignored.
  */
 @Entity(value = "servers", noClassnameStored = true)
+@Indexes({
+        @Index("network, type"),
+        @Index("type, number"),
+        @Index("node")
+})
 public class Server extends MongoEntity {
     @Reference(lazy = true)
     @Setter
     private Network network;
     @Reference(lazy = true)
-    @Setter
     private ServerType type;
+    private ServerTypeSnapshot typeSnapshot;
     @Reference(lazy = true)
-    @Setter
     private Node node;
+    private NodeSnapshot nodeSnapshot;
     @Setter
     private List<PlayerData> onlinePlayers;
     @Setter
@@ -68,6 +81,10 @@ public class Server extends MongoEntity {
     private List<ServerMetadata> metadata;
     @Setter
     private long startTime = Long.MAX_VALUE;
+    @Transient
+    private LiveState.ServerState live;
+    @Transient
+    private long liveFetched;
 
     public Network network() {
         return network;
@@ -81,11 +98,52 @@ public class Server extends MongoEntity {
         return node;
     }
 
+    /**
+     * @return The fields of the type read on hot paths, without dereferencing it
+     */
+    public ServerTypeSnapshot typeSnapshot() {
+        if (typeSnapshot == null && type != null) {
+            typeSnapshot = new ServerTypeSnapshot(type); // saved before snapshots were embedded
+        }
+
+        return typeSnapshot;
+    }
+
+    /**
+     * @return The fields of the node read on hot paths, without dereferencing it
+     */
+    public NodeSnapshot nodeSnapshot() {
+        if (nodeSnapshot == null && node != null) {
+            nodeSnapshot = new NodeSnapshot(node);
+        }
+
+        return nodeSnapshot;
+    }
+
+    public void setType(ServerType type) {
+        this.type = type;
+        this.typeSnapshot = type == null ? null : new ServerTypeSnapshot(type);
+    }
+
+    public void setNode(Node node) {
+        this.node = node;
+        this.nodeSnapshot = node == null ? null : new NodeSnapshot(node);
+    }
+
     public long startTime() {
         return startTime;
     }
 
+    /**
+     * @return The players on the server, from its live state if it is running
+     */
     public List<PlayerData> onlinePlayers() {
+        LiveState.ServerState live = live();
+
+        if (live != null) {
+            return live.players();
+        }
+
         if (onlinePlayers == null) {
             onlinePlayers = new ArrayList<>();
         }
@@ -110,10 +168,21 @@ public class Server extends MongoEntity {
     }
 
     public void removePlayer(UUID id) {
-        onlinePlayers.remove(playerBy(id));
+        onlinePlayers().remove(playerBy(id));
     }
 
+    /**
+     * @return The ram used by the server in megabytes, from its live state if it is running,
+     * -1 if it has not started yet
+     */
     public int ramUsage() {
+        LiveState.ServerState live = live();
+
+        return live == null ? ramUsage : live.ramUsage();
+    }
+
+    // the value of the document, for callers which read the live state of many servers at once
+    int storedRamUsage() {
         return ramUsage;
     }
 
@@ -130,7 +199,28 @@ public class Server extends MongoEntity {
     }
 
     public double tps() {
-        return tps;
+        LiveState.ServerState live = live();
+
+        return live == null ? tps : live.tps();
+    }
+
+    /**
+     * Fetches the live state at most once per {@link LiveState#LIFETIME} ms, so iterating over the players
+     * or sorting servers by them does not go to Redis every call
+     */
+    private LiveState.ServerState live() {
+        RedisDatabase redis = MineCloud.instance().redis();
+
+        if (redis == null) {
+            return null;
+        }
+
+        if (System.currentTimeMillis() - liveFetched > LiveState.LIFETIME) {
+            live = LiveState.create(redis).server(name());
+            liveFetched = System.currentTimeMillis();
+        }
+
+        return live;
     }
 
     public String name() {
@@ -160,22 +250,24 @@ public class Server extends MongoEntity {
         return metadataBy(name).isPresent();
     }
 
+    /**
+     * Moves the player to this server, through the bungee it is connected to when it is known
+     * from the {@link PlayerPresence}, otherwise by asking every bungee of the cloud
+     */
     public void teleport(String player) {
         RedisDatabase redis = MineCloud.instance().redis();
+        String proxy = PlayerPresence.create(redis).proxyOf(player);
 
-        if (redis.channelBy("teleport") == null) {
-            redis.addChannel(SimpleRedisChannel.create("teleport", redis));
+        if (proxy != null) {
+            redis.publish(("teleport:" + proxy).getBytes(StandardCharsets.UTF_8),
+                    Message.encode(new Teleport(player, name())), false, Priority.HIGH);
+            return;
         }
 
-        MessageOutputStream mos = new MessageOutputStream();
-
-        try {
-            mos.writeString(player);
-            mos.writeString(name());
-        } catch (IOException ex) {
-            throw new MineCloudException("Could not encode teleport message", ex);
+        if (redis.channelBy("teleport") == null) {
+            redis.addChannel(SimpleRedisChannel.create("teleport", redis));
         }
 
-        redis.channelBy("teleport").publish(mos.toMessage());
+        redis.channelBy("teleport").publish(new Teleport(player, name()));
     }
 }
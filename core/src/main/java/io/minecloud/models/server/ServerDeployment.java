@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.models.server;
+
+import io.minecloud.annotation.Immutable;
+
+/*
+ * Result of a server deploy request, as answered by the daemon which deployed it
+ */
+@Immutable
+public final class ServerDeployment {
+    private final String name;
+    private final String node;
+    private final int port;
+
+    public ServerDeployment(String name, String node, int port) {
+        this.name = name;
+        this.node = node;
+        this.port = port;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String node() {
+        return node;
+    }
+
+    public int port() {
+        return port;
+    }
+}
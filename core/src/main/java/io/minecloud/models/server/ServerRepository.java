@@ -16,15 +16,26 @@
 package io.minecloud.models.server;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.WriteResult;
+import io.minecloud.MineCloud;
 import io.minecloud.db.mongo.AbstractMongoRepository;
+import io.minecloud.db.redis.LiveState;
+import io.minecloud.db.redis.NumberAllocator;
+import io.minecloud.db.redis.PlayerPresence;
+import io.minecloud.db.redis.RedisDatabase;
 import io.minecloud.models.network.Network;
 import io.minecloud.models.player.PlayerData;
 import io.minecloud.models.server.type.ServerType;
 import org.mongodb.morphia.Datastore;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 public class ServerRepository extends AbstractMongoRepository<Server> {
     private ServerRepository(Datastore datastore) {
@@ -35,22 +46,72 @@ public class ServerRepository extends AbstractMongoRepository<Server> {
         return new ServerRepository(datastore);
     }
 
+    /**
+     * Allocates the lowest free number of the type atomically through Redis, the number is released
+     * again when the server is deleted. Without Redis the numbers in use are scanned, which may race.
+     */
     public int nextNumberFor(ServerType type) {
-        List<Server> servers = find(createQuery().filter("type", type)).asList();
+        RedisDatabase redis = MineCloud.instance().redis();
+
+        if (redis == null) {
+            return firstGap(numbersOf(type));
+        }
+
+        return NumberAllocator.create(redis).allocate(type.name(), () -> numbersOf(type));
+    }
+
+    private List<Integer> numbersOf(ServerType type) {
+        return find(createQuery().filter("type", type).retrievedFields(true, "number")).asList().stream()
+                .map(Server::number)
+                .collect(Collectors.toList());
+    }
+
+    private static int firstGap(List<Integer> numbers) {
         int lastNumber = 0;
 
-        Collections.sort(servers, (s1, s2) -> s1.number() - s2.number());
+        Collections.sort(numbers);
 
-        for (Server server : servers) {
-            if (lastNumber != (server.number() - 1))
-                return server.number() - 1;
+        for (int number : numbers) {
+            if (lastNumber != (number - 1))
+                return number - 1;
 
-            lastNumber = server.number();
+            lastNumber = number;
         }
 
         return lastNumber + 1;
     }
 
+    @Override
+    public WriteResult delete(Server server) {
+        WriteResult result = super.delete(server);
+
+        if (result.getN() > 0) {
+            releaseNumber(server);
+        }
+
+        return result;
+    }
+
+    @Override
+    public WriteResult deleteById(String id) {
+        Server server = findOne(createQuery().field("_id").equal(id).retrievedFields(true, "typeSnapshot", "type", "number"));
+
+        if (server == null) {
+            return super.deleteById(id);
+        }
+
+        return delete(server);
+    }
+
+    // only the delete which removed the document releases, so a stale delete never frees the number of a successor
+    private void releaseNumber(Server server) {
+        RedisDatabase redis = MineCloud.instance().redis();
+
+        if (redis != null && server.typeSnapshot() != null) {
+            NumberAllocator.create(redis).release(server.typeSnapshot().name(), server.number());
+        }
+    }
+
     public Server serverBy(ServerType type, int number) {
         return find(createQuery()
                 .field("type").equal(type)
@@ -68,13 +129,117 @@ public class ServerRepository extends AbstractMongoRepository<Server> {
                 .asList();
     }
 
+    /**
+     * Finds the server the player is on through the {@link PlayerPresence}, falling back to scanning
+     * the players of every server when Redis is not set up
+     */
     public Server serverFor(UUID id) {
+        RedisDatabase redis = MineCloud.instance().redis();
+
+        if (redis != null) {
+            String server = PlayerPresence.create(redis).serverOf(id);
+
+            return server == null ? null : findFirst(server);
+        }
+
         return find(createQuery().field("onlinePlayers").hasThisElement(new BasicDBObject("id", id.toString())))
                 .get();
     }
 
     public Server serverFor(String name) {
+        RedisDatabase redis = MineCloud.instance().redis();
+
+        if (redis != null) {
+            UUID id = PlayerPresence.create(redis).idOf(name);
+
+            return id == null ? null : serverFor(id);
+        }
+
         return find(createQuery().field("onlinePlayers").hasThisElement(new BasicDBObject("name", name)))
                 .get();
     }
+
+    public List<ServerView> views(Network network) {
+        return project(criteria().where("network").equal(network), ServerView.class);
+    }
+
+    /**
+     * @return The amount of servers by node name
+     */
+    public Map<String, Integer> countByNode() {
+        return countBy(criteria(), "nodeSnapshot.name");
+    }
+
+    /**
+     * @return The amount of servers of the network by type name
+     */
+    public Map<String, Integer> countByType(Network network) {
+        return countBy(criteria().where("network").equal(network), "typeSnapshot.name");
+    }
+
+    /**
+     * @return The sum of the max players of the servers of the network by type name
+     */
+    public Map<String, Integer> capacityByType(Network network) {
+        return sumBy(criteria().where("network").equal(network), "typeSnapshot.name", "typeSnapshot.maxPlayers");
+    }
+
+    /**
+     * Counts the players of the servers in one round trip, where {@link Server#onlinePlayers()} would take one per server
+     *
+     * @return The amount of players by server name
+     */
+    public Map<String, Integer> playerCounts(Collection<Server> servers) {
+        RedisDatabase redis = MineCloud.instance().redis();
+
+        if (redis == null) {
+            return servers.stream().collect(Collectors.toMap(Server::name, (server) -> server.onlinePlayers().size()));
+        }
+
+        return LiveState.create(redis).playerCounts(servers.stream()
+                .map(Server::name)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Reads the ram usage of the servers in one round trip, falling back to their documents like {@link Server#ramUsage()}
+     *
+     * @return The ram usage by server name
+     */
+    public Map<String, Integer> ramUsages(Collection<Server> servers) {
+        RedisDatabase redis = MineCloud.instance().redis();
+        Map<String, Integer> usages = redis == null ? new HashMap<>() : LiveState.create(redis)
+                .ramUsages(servers.stream().map(Server::name).collect(Collectors.toList()));
+
+        servers.forEach((server) -> usages.putIfAbsent(server.name(), server.storedRamUsage()));
+        return usages;
+    }
+
+    /**
+     * Counts the players of the network by type name from the live state of its servers in one round trip,
+     * or from the documents through an aggregation when Redis is not set up
+     */
+    public Map<String, Integer> onlinePlayersByType(Network network) {
+        RedisDatabase redis = MineCloud.instance().redis();
+
+        if (redis == null) {
+            return group(criteria().where("network").equal(network), "typeSnapshot.name",
+                    new BasicDBObject("$size", new BasicDBObject("$ifNull", Arrays.asList("$onlinePlayers",
+                            Collections.emptyList()))));
+        }
+
+        List<ServerView> views = views(network);
+        Map<String, Integer> counts = LiveState.create(redis).playerCounts(views.stream()
+                .map(ServerView::name)
+                .collect(Collectors.toList()));
+        Map<String, Integer> players = new HashMap<>();
+
+        for (ServerView view : views) {
+            if (view.typeSnapshot() != null) {
+                players.merge(view.typeSnapshot().name(), counts.get(view.name()), Integer::sum);
+            }
+        }
+
+        return players;
+    }
 }
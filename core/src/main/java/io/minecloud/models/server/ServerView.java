@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.models.server;
+
+import io.minecloud.models.nodes.NodeSnapshot;
+import io.minecloud.models.server.type.ServerTypeSnapshot;
+import org.mongodb.morphia.annotations.Id;
+
+/**
+ * Lean view of a {@link Server} for aggregate reads, see {@link ServerRepository#views(io.minecloud.models.network.Network)}
+ */
+public class ServerView {
+    @Id
+    private String id;
+    private ServerTypeSnapshot typeSnapshot;
+    private NodeSnapshot nodeSnapshot;
+    private int port;
+    private int ramUsage;
+
+    public String name() {
+        return id;
+    }
+
+    /**
+     * @return The snapshot of the type, or null for servers saved before snapshots were embedded
+     */
+    public ServerTypeSnapshot typeSnapshot() {
+        return typeSnapshot;
+    }
+
+    public NodeSnapshot nodeSnapshot() {
+        return nodeSnapshot;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @return The ram usage stored in the document, -1 if the server has not started yet
+     */
+    public int ramUsage() {
+        return ramUsage;
+    }
+}
@@ -16,10 +16,12 @@
 package io.minecloud.models.server.type;
 
 import io.minecloud.MineCloud;
-import io.minecloud.MineCloudException;
 import io.minecloud.db.mongo.model.MongoEntity;
+import io.minecloud.db.redis.PlayerPresence;
 import io.minecloud.db.redis.RedisDatabase;
-import io.minecloud.db.redis.msg.binary.MessageOutputStream;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.types.TeleportType;
 import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
 import io.minecloud.models.nodes.type.NodeType;
 import io.minecloud.models.plugins.Plugin;
@@ -30,7 +32,7 @@ import org.mongodb.morphia.annotations.Entity;
 import org.mongodb.morphia.annotations.Property;
 import org.mongodb.morphia.annotations.Reference;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -108,22 +110,23 @@ public class ServerType extends MongoEntity {
         setId(name);
     }
 
+    /**
+     * Moves the player to the emptiest server of this type, see {@link io.minecloud.models.server.Server#teleport(String)}
+     */
     public void teleport(String player) {
         RedisDatabase redis = MineCloud.instance().redis();
+        String proxy = PlayerPresence.create(redis).proxyOf(player);
 
-        if (redis.channelBy("teleport-type") == null) {
-            redis.addChannel(SimpleRedisChannel.create("teleport-type", redis));
+        if (proxy != null) {
+            redis.publish(("teleport-type:" + proxy).getBytes(StandardCharsets.UTF_8),
+                    Message.encode(new TeleportType(player, name())), false, Priority.HIGH);
+            return;
         }
 
-        MessageOutputStream mos = new MessageOutputStream();
-
-        try {
-            mos.writeString(player);
-            mos.writeString(name());
-        } catch (IOException ex) {
-            throw new MineCloudException("Could not encode teleport message", ex);
+        if (redis.channelBy("teleport-type") == null) {
+            redis.addChannel(SimpleRedisChannel.create("teleport-type", redis));
         }
 
-        redis.channelBy("teleport-type").publish(mos.toMessage());
+        redis.channelBy("teleport-type").publish(new TeleportType(player, name()));
     }
 }
@@ -16,11 +16,13 @@
 package io.minecloud.models.server.type;
 
 import io.minecloud.db.mongo.AbstractMongoRepository;
+import io.minecloud.models.server.Server;
 import org.mongodb.morphia.Datastore;
+import org.mongodb.morphia.Key;
 
 public class ServerTypeRepository extends AbstractMongoRepository<ServerType> {
     private ServerTypeRepository(Datastore datastore) {
-        super(ServerType.class, datastore);
+        super(ServerType.class, datastore, true);
     }
 
     public static ServerTypeRepository create(Datastore datastore) {
@@ -30,4 +32,20 @@ public class ServerTypeRepository extends AbstractMongoRepository<ServerType> {
     public ServerType serverTypeBy(String name) {
         return findFirst(name);
     }
+
+    /**
+     * Saves the type and refreshes the snapshot of it embedded in its servers
+     */
+    @Override
+    public Key<ServerType> save(ServerType type) {
+        Key<ServerType> key = super.save(type);
+
+        refreshSnapshots(type);
+        return key;
+    }
+
+    @Override
+    protected int refreshSnapshots(ServerType type) {
+        return refreshSnapshots(Server.class, "type", type, "typeSnapshot", new ServerTypeSnapshot(type));
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.models.server.type;
+
+import io.minecloud.db.mongo.model.Snapshot;
+
+import java.util.Objects;
+
+public class ServerTypeSnapshot implements Snapshot {
+    private String name;
+    private int maxPlayers;
+    private int dedicatedRam;
+    private boolean defaultServer;
+    private int version;
+
+    public ServerTypeSnapshot() {
+    }
+
+    public ServerTypeSnapshot(ServerType type) {
+        this.name = type.name();
+        this.maxPlayers = type.maxPlayers();
+        this.dedicatedRam = type.dedicatedRam();
+        this.defaultServer = type.defaultServer();
+        this.version = Objects.hash(name, maxPlayers, dedicatedRam, defaultServer);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int maxPlayers() {
+        return maxPlayers;
+    }
+
+    public int dedicatedRam() {
+        return dedicatedRam;
+    }
+
+    public boolean defaultServer() {
+        return defaultServer;
+    }
+
+    @Override
+    public int version() {
+        return version;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.mongo;
+
+import com.mongodb.MongoClient;
+import io.minecloud.db.Credentials;
+import io.minecloud.db.mongo.model.MongoEntity;
+import io.minecloud.models.bungee.Bungee;
+import io.minecloud.models.bungee.BungeeRepository;
+import io.minecloud.models.bungee.type.BungeeType;
+import io.minecloud.models.network.Network;
+import io.minecloud.models.nodes.Node;
+import io.minecloud.models.player.PlayerData;
+import io.minecloud.models.server.Server;
+import io.minecloud.models.server.ServerRepository;
+import io.minecloud.models.server.type.ServerType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mongodb.morphia.Datastore;
+import org.mongodb.morphia.query.Query;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs every hot query path through explain against a local mongod, skipped when mongod is not on the path
+ */
+public class IndexCoverageTest {
+    private Process process;
+    private MongoClient client;
+    private ServerRepository servers;
+    private BungeeRepository bungees;
+    private Network network;
+    private ServerType serverType;
+    private BungeeType bungeeType;
+    private Node node;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(available());
+
+        int port = freePort();
+        File directory = Files.createTempDirectory("minecloud-mongo").toFile();
+
+        process = new ProcessBuilder("mongod", "--port", String.valueOf(port), "--bind_ip", "127.0.0.1",
+                "--dbpath", directory.getAbsolutePath(), "--nojournal")
+                .redirectErrorStream(true)
+                .redirectOutput(new File(directory, "mongod.log"))
+                .start();
+
+        awaitStartup(port);
+
+        MongoDatabase database = MongoDatabase.createDatabase(new Credentials(new String[] {"127.0.0.1:" + port},
+                "", new char[0], "minecloud-test"));
+
+        database.setup();
+
+        Datastore datastore = database.datastore();
+
+        servers = ServerRepository.create(datastore);
+        bungees = BungeeRepository.create(datastore);
+
+        database.loadRepository(servers, Server.class);
+        database.loadRepository(bungees, Bungee.class);
+        IndexManager.create(database).ensureIndexes();
+
+        client = datastore.getMongo();
+
+        network = entity(new Network(), "network", datastore);
+        serverType = entity(new ServerType(), "lobby", datastore);
+        bungeeType = entity(new BungeeType(), "proxy", datastore);
+        node = entity(new Node(), "node", datastore);
+
+        for (int i = 0; i < 50; i++) {
+            Server server = new Server();
+            PlayerData player = new PlayerData();
+            Bungee bungee = new Bungee();
+
+            player.setId("player-" + i);
+            player.setName("Player" + i);
+
+            server.setId("server-" + i);
+            server.setNetwork(network);
+            server.setType(serverType);
+            server.setNode(node);
+            server.setNumber(i + 1);
+            server.setPort(32812 + i);
+            server.setRamUsage(512);
+            server.setOnlinePlayers(Collections.singletonList(player));
+            servers.save(server);
+
+            bungee.setId("bungee-" + i);
+            bungee.setNetwork(network);
+            bungee.setType(bungeeType);
+            bungee.setNode(node);
+            bungees.save(bungee);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+
+        if (process != null) {
+            process.destroy();
+        }
+    }
+
+    @Test
+    public void serverQueriesUseIndexes() {
+        assertIndexed(servers.createQuery().field("network").equal(network));
+        assertIndexed(servers.createQuery().field("type").equal(serverType));
+        assertIndexed(servers.createQuery().filter("type", serverType));
+        assertIndexed(servers.createQuery()
+                .field("type").equal(serverType)
+                .field("number").equal(3));
+        assertIndexed(servers.createQuery()
+                .field("network").equal(network)
+                .field("ramUsage").notEqual(-1)
+                .field("port").notEqual(-1)
+                .field("type").equal(serverType));
+        assertIndexed(servers.createQuery()
+                .field("node").equal(node)
+                .field("port").notEqual(-1)
+                .field("tps").notEqual(-1));
+        assertIndexed(servers.criteria().where("node").equal(node).apply(servers.createQuery()));
+    }
+
+    @Test
+    public void bungeeQueriesUseIndexes() {
+        assertIndexed(bungees.createQuery().field("node").equal(node));
+        assertIndexed(bungees.createQuery()
+                .field("network").equal(network)
+                .field("type").equal(bungeeType));
+    }
+
+    private static void assertIndexed(Query<?> query) {
+        Map<String, Object> plan = query.explain();
+        String explained = String.valueOf(plan);
+
+        assertFalse(query + " does a collection scan: " + explained,
+                explained.contains("COLLSCAN") || explained.contains("BasicCursor"));
+    }
+
+    private static <T extends MongoEntity> T entity(T entity, String id, Datastore datastore) {
+        entity.setId(id);
+        datastore.save(entity);
+        return entity;
+    }
+
+    private static void awaitStartup(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (true) {
+            try (Socket ignored = new Socket("127.0.0.1", port)) {
+                return;
+            } catch (IOException ex) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("mongod did not start on port " + port, ex);
+                }
+
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static boolean available() {
+        try {
+            return new ProcessBuilder("mongod", "--version").start().waitFor() == 0;
+        } catch (IOException | InterruptedException ex) {
+            return false;
+        }
+    }
+}
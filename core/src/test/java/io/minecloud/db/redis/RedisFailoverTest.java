@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis;
+
+import io.minecloud.db.Credentials;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs against local redis-server processes, skipped when redis-server is not on the path
+ */
+public class RedisFailoverTest {
+    private final List<Process> processes = new ArrayList<>();
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(available());
+        directory = Files.createTempDirectory("minecloud-redis").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        processes.forEach(Process::destroy);
+    }
+
+    @Test
+    public void resubscribesAfterRestart() throws Exception {
+        int port = freePort();
+        Process master = redis(port);
+        RedisDatabase database = database(new Credentials(new String[] {"127.0.0.1:" + port}, "", new char[0]));
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        SimpleRedisChannel channel = SimpleRedisChannel.create("failover-test", database)
+                .addCallback((message) -> received.add(message.toString()));
+
+        channel.subscribed().get(5, TimeUnit.SECONDS);
+
+        master.destroy();
+        master.waitFor();
+        redis(port);
+
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (channel.metrics().resubscribes() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        channel.publish(Message.messageFrom("after restart"));
+        assertEquals("after restart", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void followsSentinelFailover() throws Exception {
+        int masterPort = freePort();
+        int replicaPort = freePort();
+        int sentinelPort = freePort();
+        Process master = redis(masterPort);
+
+        redis(replicaPort, "--slaveof", "127.0.0.1", String.valueOf(masterPort));
+        sentinel(sentinelPort, masterPort);
+
+        awaitReplica(masterPort);
+
+        RedisDatabase database = database(new Credentials(new String[] {"127.0.0.1:" + sentinelPort}, "",
+                new char[0], "minecloud"));
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        SimpleRedisChannel channel = SimpleRedisChannel.create("failover-test", database)
+                .addCallback((message) -> received.add(message.toString()));
+
+        channel.subscribed().get(5, TimeUnit.SECONDS);
+
+        try (Jedis jedis = database.grabReadResource()) {
+            assertTrue(jedis.info("replication").contains("role:slave"));
+        }
+
+        master.destroy();
+
+        long deadline = System.currentTimeMillis() + 30000;
+        String message = null;
+
+        while (message == null && System.currentTimeMillis() < deadline) {
+            try {
+                channel.publish(Message.messageFrom("after failover"));
+                message = received.poll(500, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException ignored) {
+                Thread.sleep(500); // no master elected yet
+            }
+        }
+
+        assertEquals("after failover", message);
+    }
+
+    private RedisDatabase database(Credentials credentials) {
+        RedisDatabase database = RedisDatabase.create(credentials);
+
+        database.setup();
+        return database;
+    }
+
+    private void awaitReplica(int masterPort) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (System.currentTimeMillis() < deadline) {
+            try (Jedis jedis = new Jedis("127.0.0.1", masterPort)) {
+                if (jedis.info("replication").contains("connected_slaves:1")) {
+                    return;
+                }
+            }
+
+            Thread.sleep(100);
+        }
+    }
+
+    private Process redis(int port, String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList("redis-server", "--port", String.valueOf(port),
+                "--save", "", "--appendonly", "no", "--dir", directory.getAbsolutePath()));
+
+        command.addAll(Arrays.asList(arguments));
+        return start(command, port);
+    }
+
+    private void sentinel(int port, int masterPort) throws IOException, InterruptedException {
+        File config = new File(directory, "sentinel-" + port + ".conf");
+
+        Files.write(config.toPath(), Arrays.asList(
+                "port " + port,
+                "sentinel monitor minecloud 127.0.0.1 " + masterPort + " 1",
+                "sentinel down-after-milliseconds minecloud 1000",
+                "sentinel failover-timeout minecloud 5000"));
+
+        start(Arrays.asList("redis-server", config.getAbsolutePath(), "--sentinel"), port);
+    }
+
+    private Process start(List<String> command, int port) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(new File(directory, port + ".log")).start();
+        long deadline = System.currentTimeMillis() + 5000;
+
+        processes.add(process);
+
+        while (System.currentTimeMillis() < deadline) {
+            try (Jedis jedis = new Jedis("127.0.0.1", port)) {
+                jedis.ping();
+                return process;
+            } catch (RuntimeException ignored) {
+                Thread.sleep(50);
+            }
+        }
+
+        throw new IllegalStateException("redis-server did not start on port " + port);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static boolean available() {
+        try {
+            return new ProcessBuilder("redis-server", "--version").start().waitFor() == 0;
+        } catch (IOException | InterruptedException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2015, Mazen Kotb <email@mazenmc.io>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package io.minecloud.db.redis.msg.binary;
+
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.schema.MessageSchema;
+import io.minecloud.db.redis.msg.schema.SchemaMessage;
+import io.minecloud.db.redis.msg.schema.Tag;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips of the primitives of the wire format, over edge cases and seeded random values of every magnitude
+ */
+public class WireFormatTest {
+    private static final int SAMPLES = 100_000;
+    private static final int[] INT_EDGES = {
+            0, 1, -1, 127, 128, 16383, 16384, (1 << 21) - 1, 1 << 21, (1 << 24) - 1, 1 << 24, 1 << 28,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1
+    };
+    private static final long[] LONG_EDGES = {
+            0, 1, -1, 127, 128, 1L << 31, 1L << 32, (1L << 56) - 1, 1L << 56, 1L << 63 >>> 1,
+            Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1
+    };
+
+    private final Random random = new Random(0x4D696E65L);
+
+    @Test
+    public void varInt32RoundTrips() {
+        for (int value : INT_EDGES) {
+            assertVarInt32(value);
+        }
+
+        for (int i = 0; i < SAMPLES; i++) {
+            assertVarInt32(randomInt());
+        }
+    }
+
+    @Test
+    public void varInt64RoundTrips() {
+        for (long value : LONG_EDGES) {
+            assertVarInt64(value);
+        }
+
+        for (int i = 0; i < SAMPLES; i++) {
+            assertVarInt64(randomLong());
+        }
+    }
+
+    @Test
+    public void varIntsAreStandardLeb128() {
+        assertArrayEquals(new byte[] {0}, varInt32(0));
+        assertArrayEquals(new byte[] {(byte) 0xAC, 0x02}, varInt32(300));
+        assertArrayEquals(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01}, varInt32(1 << 28));
+        assertArrayEquals(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}, varInt32(-1));
+        assertEquals(1, MessageOutputStream.sizeOfVarInt32(MessageOutputStream.zigZag(-1)));
+        assertEquals(10, MessageOutputStream.sizeOfVarInt64(-1L));
+    }
+
+    @Test
+    public void zigZagRoundTrips() {
+        for (int value : INT_EDGES) {
+            assertEquals(value, MessageInputStream.unZigZag(MessageOutputStream.zigZag(value)));
+        }
+
+        for (long value : LONG_EDGES) {
+            assertEquals(value, MessageInputStream.unZigZag(MessageOutputStream.zigZag(value)));
+        }
+
+        for (int i = 0; i < SAMPLES; i++) {
+            int value = randomInt();
+            long wide = randomLong();
+            MessageOutputStream os = new MessageOutputStream();
+
+            os.writeSignedVarInt32(value);
+            os.writeSignedVarInt64(wide);
+
+            MessageInputStream is = new MessageInputStream(os.toByteArray());
+
+            assertEquals(value, is.readSignedVarInt32());
+            assertEquals(wide, is.readSignedVarInt64());
+        }
+    }
+
+    @Test
+    public void fixedWidthValuesRoundTrip() throws IOException {
+        for (int i = 0; i < SAMPLES; i++) {
+            double value = random.nextBoolean() ? random.nextDouble() * randomLong() : Double.longBitsToDouble(randomLong());
+            UUID id = new UUID(randomLong(), randomLong());
+            boolean flag = random.nextBoolean();
+            MessageOutputStream os = new MessageOutputStream();
+
+            os.writeDouble(value);
+            os.writeUuid(id);
+            os.writeBoolean(flag);
+
+            MessageInputStream is = new MessageInputStream(os.toByteArray());
+
+            assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(is.readDouble()));
+            assertEquals(id, is.readUuid());
+            assertEquals(flag, is.readBoolean());
+            assertEquals(0, is.available());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverlongVarInt32() {
+        new MessageInputStream(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01})
+                .readVarInt32();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedVarInt() {
+        new MessageInputStream(new byte[] {(byte) 0x80, (byte) 0x80}).readVarInt64();
+    }
+
+    @Test
+    public void rejectsInvalidMessageLength() {
+        for (byte[] frame : new byte[][] {{0x00}, {0x03, 0x01, 0x02}, {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}}) {
+            try {
+                new MessageInputStream(frame).readMessage();
+                fail("Accepted an invalid nested message length");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void schemaFieldsRoundTrip() {
+        for (int i = 0; i < 10_000; i++) {
+            Numbers numbers = new Numbers(randomInt(), randomInt(), randomLong(), randomLong(),
+                    Double.longBitsToDouble(randomLong()), random.nextBoolean() ? null : new UUID(randomLong(), randomLong()));
+            Numbers decoded = Message.decode(Message.encode(numbers)).as(Numbers.class);
+
+            assertEquals(numbers.count, decoded.count);
+            assertEquals(numbers.delta, decoded.delta);
+            assertEquals(numbers.total, decoded.total);
+            assertEquals(numbers.offset, decoded.offset);
+            assertEquals(Double.doubleToRawLongBits(numbers.ratio), Double.doubleToRawLongBits(decoded.ratio));
+            assertEquals(numbers.id, decoded.id);
+        }
+    }
+
+    @Test
+    public void signedFieldsStayShort() {
+        assertEquals(Message.encode(new Numbers(0, 0, 0, 0, 0, null)).length + 2,
+                Message.encode(new Numbers(0, -1, 0, 0, 0, null)).length);
+    }
+
+    private void assertVarInt32(int value) {
+        byte[] encoded = varInt32(value);
+
+        assertEquals(MessageOutputStream.sizeOfVarInt32(value), encoded.length);
+        assertEquals(value, new MessageInputStream(encoded).readVarInt32());
+    }
+
+    private void assertVarInt64(long value) {
+        MessageOutputStream os = new MessageOutputStream();
+
+        os.writeVarInt64(value);
+
+        byte[] encoded = os.toByteArray();
+
+        assertEquals(MessageOutputStream.sizeOfVarInt64(value), encoded.length);
+        assertEquals(value, new MessageInputStream(encoded).readVarInt64());
+    }
+
+    private static byte[] varInt32(int value) {
+        MessageOutputStream os = new MessageOutputStream();
+
+        os.writeVarInt32(value);
+        return os.toByteArray();
+    }
+
+    // uniform over bit lengths, so every varint size is covered as often
+    private int randomInt() {
+        int value = random.nextInt() >>> random.nextInt(32);
+
+        return random.nextBoolean() ? value : -value;
+    }
+
+    private long randomLong() {
+        long value = random.nextLong() >>> random.nextInt(64);
+
+        return random.nextBoolean() ? value : -value;
+    }
+
+    @MessageSchema(id = 127)
+    private static final class Numbers implements SchemaMessage {
+        @Tag(1)
+        private int count;
+        @Tag(value = 2, signed = true)
+        private int delta;
+        @Tag(3)
+        private long total;
+        @Tag(value = 4, signed = true)
+        private long offset;
+        @Tag(5)
+        private double ratio;
+        @Tag(6)
+        private UUID id;
+
+        private Numbers() {
+        }
+
+        private Numbers(int count, int delta, long total, long offset, double ratio, UUID id) {
+            this.count = count;
+            this.delta = delta;
+            this.total = total;
+            this.offset = offset;
+            this.ratio = ratio;
+            this.id = id;
+        }
+    }
+}
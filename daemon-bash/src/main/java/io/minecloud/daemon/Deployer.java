@@ -18,6 +18,7 @@ package io.minecloud.daemon;
 import io.minecloud.MineCloud;
 import io.minecloud.MineCloudException;
 import io.minecloud.db.Credentials;
+import io.minecloud.db.redis.HeartbeatRegistry;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.bungee.BungeeRepository;
 import io.minecloud.models.bungee.type.BungeeType;
@@ -27,13 +28,13 @@ import io.minecloud.models.server.Server;
 import io.minecloud.models.server.ServerMetadata;
 import io.minecloud.models.server.ServerRepository;
 import io.minecloud.models.server.type.ServerType;
-import redis.clients.jedis.Jedis;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
@@ -43,7 +44,7 @@ public final class Deployer {
     private Deployer() {
     }
 
-    public static void deployServer(Network network, ServerType type, List<ServerMetadata> metadata) {
+    public static CompletableFuture<Server> deployServer(Network network, ServerType type, List<ServerMetadata> metadata) {
         Credentials mongoCreds = MineCloud.instance().mongo().credentials();
         Credentials redisCreds = MineCloud.instance().redis().credentials();
         ServerRepository repository = MineCloud.instance().mongo().repositoryBy(Server.class);
@@ -63,7 +64,10 @@ public final class Deployer {
 
         try {
             if (isRunning(server.name())) {
-                return;
+                CompletableFuture<Server> future = new CompletableFuture<>();
+
+                future.completeExceptionally(new MineCloudException(server.name() + " is already running"));
+                return future;
             }
         } catch (IOException | InterruptedException ignored) {
         }
@@ -74,8 +78,9 @@ public final class Deployer {
             put("mongo_password", new String(mongoCreds.password()));
             put("mongo_database", mongoCreds.database());
 
-            put("redis_host", redisCreds.hosts()[0]);
+            put("redis_host", redisCreds.formattedHosts());
             put("redis_password", new String(redisCreds.password()));
+            put("redis_master", redisCreds.database());
             put("SERVER_MOD", server.type().mod());
             put("DEDICATED_RAM", String.valueOf(server.type().dedicatedRam()));
             put("MAX_PLAYERS", String.valueOf(server.type().maxPlayers()));
@@ -91,6 +96,7 @@ public final class Deployer {
         startApplication(processScript("/mnt/minecloud/server/bukkit/" + server.type().mod() + "/init.sh", env), server.name());
         repository.save(server);
         MineCloud.logger().info("Started server " + server.name() + " with container id " + server.containerId());
+        return CompletableFuture.completedFuture(server);
     }
 
     public static void deployBungee(Network network, BungeeType type) {
@@ -114,8 +120,9 @@ public final class Deployer {
             put("mongo_password", new String(mongoCreds.password()));
             put("mongo_database", mongoCreds.database());
 
-            put("redis_host", redisCreds.hosts()[0]);
+            put("redis_host", redisCreds.formattedHosts());
             put("redis_password", new String(redisCreds.password()));
+            put("redis_master", redisCreds.database());
             put("DEDICATED_RAM", String.valueOf(type.dedicatedRam()));
 
             put("bungee_id", node.publicIp());
@@ -140,9 +147,7 @@ public final class Deployer {
     }
 
     public static void killServer(String name) {
-        try (Jedis jedis = MineCloudDaemon.instance().redis().grabResource()) {
-            jedis.hdel("server:" + name, "heartbeat");
-        }
+        HeartbeatRegistry.create(MineCloudDaemon.instance().redis(), HeartbeatRegistry.SERVERS).remove(name);
 
         try {
             int pid = Deployer.pidOf(name);
@@ -18,9 +18,12 @@ package io.minecloud.daemon;
 import io.minecloud.MineCloud;
 import io.minecloud.db.Credentials;
 import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.db.redis.DuplicateFilter;
+import io.minecloud.db.redis.HeartbeatRegistry;
 import io.minecloud.db.redis.RedisDatabase;
-import io.minecloud.db.redis.msg.MessageType;
-import io.minecloud.db.redis.msg.binary.MessageInputStream;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.types.*;
 import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.bungee.BungeeRepository;
@@ -33,13 +36,14 @@ import io.minecloud.models.server.ServerMetadata;
 import io.minecloud.models.server.ServerRepository;
 import io.minecloud.models.server.type.ServerType;
 import org.mongodb.morphia.query.Query;
-import redis.clients.jedis.Jedis;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -49,6 +53,8 @@ public class MineCloudDaemon {
     private final String node;
     private final RedisDatabase redis;
     private final MongoDatabase mongo;
+    private final DuplicateFilter commands;
+    private final HeartbeatRegistry servers;
 
     private List<String> names;
 
@@ -56,134 +62,120 @@ public class MineCloudDaemon {
         redis = MineCloud.instance().redis();
         mongo = MineCloud.instance().mongo();
         node = (String) properties.get("node-name");
+        commands = DuplicateFilter.create(redis, "daemon:" + node, 10, TimeUnit.MINUTES, 4096);
+        servers = HeartbeatRegistry.create(redis, HeartbeatRegistry.SERVERS);
+        HeartbeatRegistry.create(redis, HeartbeatRegistry.NODES).beatPeriodically(node);
 
         instance = this;
 
         redis.addChannel(SimpleRedisChannel.create("server-create", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY) {
-                        return;
-                    }
-
-                    MessageInputStream stream = message.contents();
-
-                    if (!stream.readString().equalsIgnoreCase(node)) {
-                        return;
-                    }
+                .addCallback(this::deployFrom));
 
-                    Network network = mongo.repositoryBy(Network.class).findFirst(stream.readString());
-                    ServerType type = mongo.repositoryBy(ServerType.class).findFirst(stream.readString());
-                    List<ServerMetadata> metadata = new ArrayList<>();
-                    int size = stream.readVarInt32();
+        redis.respond("server-deploy", (request) -> {
+            CompletableFuture<Server> deployment = deployFrom(request);
 
-                    for (int i = 0; i < size; i++) {
-                        metadata.add(new ServerMetadata(stream.readString(), stream.readString()));
-                    }
+            if (deployment == null) {
+                return null;
+            }
 
-                    Deployer.deployServer(network, type, metadata);
-                }));
+            return deployment.thenApply((server) -> Message.messageFrom(new ServerDeployed(server.name(), server.port())));
+        });
 
-        redis.addChannel(SimpleRedisChannel.create("server-kill", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY) {
+        redis.addChannel(SimpleRedisChannel.create("server-kill", redis, Priority.HIGH)
+                .addCallback(ServerKill.class, (message) -> {
+                    if (!message.node().equalsIgnoreCase(node))
                         return;
-                    }
-
-                    MessageInputStream stream = message.contents();
 
-                    if (!stream.readString().equalsIgnoreCase(node))
+                    if (!commands.firstSeen(message.idempotencyKey()))
                         return;
 
-                    Server server = mongo.repositoryBy(Server.class).findFirst(stream.readString());
+                    // already removed from the db when reaped by the controller
+                    Server server = mongo.repositoryBy(Server.class).findFirst(message.server());
 
-                    if (!server.node().name().equals(node)) {
+                    if (server != null && !server.nodeSnapshot().name().equals(node)) {
                         MineCloud.logger().log(Level.SEVERE, "Invalid request was sent to kill a server " +
                                 "not on the current node");
                         return;
                     }
 
                     try {
-                        new ProcessBuilder().command("/usr/bin/kill", "-9", String.valueOf(Deployer.pidOf(server.name()))).start();
-                        Deployer.runExit(server.name());
-                        MineCloud.logger().info("Killed server " + server.name()
-                                + " with container id " + server.containerId());
-                        mongo.repositoryBy(Server.class).delete(server);
-                        try (Jedis jedis = this.redis.grabResource()) {
-                            jedis.hdel("server:" + server.entityId(), "heartbeat");
+                        new ProcessBuilder().command("/usr/bin/kill", "-9", String.valueOf(Deployer.pidOf(message.server()))).start();
+                        Deployer.runExit(message.server());
+                        MineCloud.logger().info("Killed server " + message.server());
+
+                        if (server != null) {
+                            mongo.repositoryBy(Server.class).delete(server);
                         }
+
+                        servers.remove(message.server());
                     } catch (IOException e) {
                         MineCloud.logger().log(Level.SEVERE, "Was unable to kill a server", e);
+                        commands.forget(message.idempotencyKey()); // so a retry tries again
                     }
                 }));
 
         redis.addChannel(SimpleRedisChannel.create("bungee-create", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY) {
-                        return;
-                    }
-
-                    MessageInputStream stream = message.contents();
-
-                    if (!stream.readString().equalsIgnoreCase(node))
+                .addCallback(BungeeCreate.class, (message) -> {
+                    if (!message.node().equalsIgnoreCase(node))
                         return;
 
-                    Network network = mongo.repositoryBy(Network.class).findFirst(stream.readString());
-                    BungeeType type = mongo.repositoryBy(BungeeType.class).findFirst(stream.readString());
+                    commands.once(message.idempotencyKey(), () -> {
+                        Network network = mongo.repositoryBy(Network.class).findFirst(message.network());
+                        BungeeType type = mongo.repositoryBy(BungeeType.class).findFirst(message.type());
 
-                    Deployer.deployBungee(network, type);
+                        Deployer.deployBungee(network, type);
+                    });
                 }));
 
-        redis.addChannel(SimpleRedisChannel.create("bungee-kill", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY) {
+        redis.addChannel(SimpleRedisChannel.create("bungee-kill", redis, Priority.HIGH)
+                .addCallback(BungeeKill.class, (message) -> {
+                    if (!message.node().equalsIgnoreCase(node))
                         return;
-                    }
 
-                    MessageInputStream stream = message.contents();
-
-                    if (!stream.readString().equalsIgnoreCase(node))
+                    if (!commands.firstSeen(message.idempotencyKey()))
                         return;
 
-                    Bungee bungee = mongo.repositoryBy(Bungee.class).findFirst(stream.readString());
+                    Bungee bungee = mongo.repositoryBy(Bungee.class).findFirst(message.bungee());
 
-                    if (!bungee.node().name().equals(node)) {
+                    if (bungee != null && !bungee.nodeSnapshot().name().equals(node)) {
                         MineCloud.logger().log(Level.SEVERE, "Invalid request was sent to kill a bungee " +
                                 "not on the current node");
                         return;
                     }
 
+                    // a node runs a single bungee, identified by its public ip
+                    if (!message.bungee().equals(node().publicIp())) {
+                        MineCloud.logger().log(Level.SEVERE, "Invalid request was sent to kill bungee " +
+                                message.bungee() + " which is not the bungee of the current node");
+                        return;
+                    }
+
                     try {
                         new ProcessBuilder().command("/usr/bin/kill", "-9", String.valueOf(Deployer.pidOf("bungee"))).start();
-                        MineCloud.logger().info("Killed bungee " + bungee.name()
-                                + " with container id " + bungee.containerId());
+                        MineCloud.logger().info("Killed bungee " + message.bungee());
 
-                        mongo.repositoryBy(Bungee.class).delete(bungee);
+                        if (bungee != null) {
+                            mongo.repositoryBy(Bungee.class).delete(bungee);
+                        }
                     } catch (IOException e) {
                         MineCloud.logger().log(Level.SEVERE, "Was unable to kill a server", e);
+                        commands.forget(message.idempotencyKey()); // so a retry tries again
                     }
                 }));
 
         redis.addChannel(SimpleRedisChannel.create("server-start-notif", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY)
-                        return;
+                .addCallback(ServerStartNotif.class, (message) -> {
+                    Server server = mongo.repositoryBy(Server.class).findFirst(message.server());
 
-                    MessageInputStream stream = message.contents();
-                    Server server = mongo.repositoryBy(Server.class).findFirst(stream.readString());
-
-                    if (!server.node().name().equals(node))
+                    if (!server.nodeSnapshot().name().equals(node))
                         return;
 
                     server.setContainerId(String.valueOf(Deployer.pidOf(server.name())));
                     mongo.repositoryBy(Server.class).save(server);
                 }));
         redis.addChannel(SimpleRedisChannel.create("server-shutdown-notif", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY)
-                        return;
-
-                    MessageInputStream stream = message.contents();
-                    File file = new File("/var/minecloud/" + stream.readString());
+                .addCallback(ServerShutdownNotif.class, (message) -> {
+                    File file = new File("/var/minecloud/" + message.server());
 
                     if (file.exists()) {
                         file.delete();
@@ -229,9 +221,7 @@ public class MineCloudDaemon {
                     Deployer.killServer(server.name());
                     repository.delete(server);
                     names.remove(server.name());
-                    try (Jedis jedis = this.redis.grabResource()) {
-                        jedis.hdel("server:" + server.entityId(), "heartbeat");
-                    }
+                    servers.remove(server.entityId());
                     MineCloud.logger().info("Removed dead server (" + server.name() + ")");
                 } catch (IOException | InterruptedException ex) {
                     if (!(ex instanceof NoSuchFileException)) {
@@ -240,25 +230,6 @@ public class MineCloudDaemon {
                 }
             });
 
-            try (Jedis jedis = this.redis.grabResource()) {
-                nodeServers.stream().filter((s) -> s.ramUsage() != -1).forEach(server ->  {
-                    Map<String, String> hResult = jedis.hgetAll("server:" + server.entityId());
-
-                    if (hResult == null || hResult.isEmpty()) {
-                        return; //Prevent loop from dying.
-                    }
-
-                    long heartbeat = Long.valueOf(hResult.get("heartbeat"));
-                    long difference = System.currentTimeMillis() - heartbeat;
-                    if (difference > 35000L) {
-                        Deployer.killServer(server.name());
-                        repository.delete(server);
-                        names.remove(server.name());
-                        MineCloud.logger().log(Level.WARNING, "Found server not updated in 20s, killing (" + server.name() + ")");
-                    }
-                });
-            }
-
             if (bungeeRepo.findOne("_id", node.publicIp()) != null) {
                 try {
                     if ((System.currentTimeMillis() - Deployer.timeStarted("bungee")) > 600_000L & !Deployer.isRunning("bungee")) {
@@ -318,9 +289,10 @@ public class MineCloudDaemon {
                 properties.getProperty("mongo-username"),
                 properties.getProperty("mongo-password").toCharArray(),
                 properties.getProperty("mongo-database"));
-        Credentials redis = new Credentials(new String[] {properties.getProperty("redis-host")},
+        Credentials redis = new Credentials(properties.getProperty("redis-host").split(";"),
                 "",
-                properties.getProperty("redis-password").toCharArray());
+                properties.getProperty("redis-password").toCharArray(),
+                properties.getProperty("redis-master", ""));
 
         MineCloud.instance().initiateMongo(mongo);
         MineCloud.instance().initiateRedis(redis);
@@ -332,6 +304,37 @@ public class MineCloudDaemon {
         return instance;
     }
 
+    private CompletableFuture<Server> deployFrom(Message message) {
+        if (!message.is(ServerCreate.class)) {
+            return null;
+        }
+
+        ServerCreate request = message.as(ServerCreate.class);
+
+        if (!request.node().equalsIgnoreCase(node)) {
+            return null;
+        }
+
+        // a repeat gets the deployment of the first delivery, so a retried request is still answered
+        CompletableFuture<Server> deployment = commands.once(request.idempotencyKey(), () -> {
+            Network network = mongo.repositoryBy(Network.class).findFirst(request.network());
+            ServerType type = mongo.repositoryBy(ServerType.class).findFirst(request.type());
+            List<ServerMetadata> metadata = new ArrayList<>();
+
+            if (request.metadata() != null) {
+                request.metadata().forEach((key, value) -> metadata.add(new ServerMetadata(key, value)));
+            }
+
+            return Deployer.deployServer(network, type, metadata);
+        });
+
+        if (deployment == null) {
+            MineCloud.logger().info("Dropped repeated deploy of " + request.type() + " (" + request.idempotencyKey() + ")");
+        }
+
+        return deployment;
+    }
+
     public Node node() {
         return ((NodeRepository) mongo.repositoryBy(Node.class)).nodeBy(node);
     }
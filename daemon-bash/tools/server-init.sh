@@ -16,6 +16,7 @@ mongo_database="]mongo_database"
 
 redis_host="]redis_host"
 redis_password="]redis_password"
+redis_master="]redis_master"
 SERVER_MOD="]SERVER_MOD"
 DEDICATED_RAM="]DEDICATED_RAM"
 MAX_PLAYERS="]MAX_PLAYERS"
@@ -20,11 +20,13 @@ import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.DockerException;
 import com.spotify.docker.client.messages.*;
 import io.minecloud.MineCloud;
+import io.minecloud.MineCloudException;
 import io.minecloud.db.Credentials;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.bungee.BungeeRepository;
 import io.minecloud.models.bungee.type.BungeeType;
 import io.minecloud.models.network.Network;
+import io.minecloud.models.network.NetworkRepository;
 import io.minecloud.models.nodes.Node;
 import io.minecloud.models.server.Server;
 import io.minecloud.models.server.ServerMetadata;
@@ -36,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
@@ -44,7 +47,8 @@ public final class Deployer {
 
     private Deployer() {}
 
-    public static void deployServer(Network network, ServerType type, List<ServerMetadata> metadata) {
+    public static CompletableFuture<Server> deployServer(Network network, ServerType type, List<ServerMetadata> metadata) {
+        CompletableFuture<Server> future = new CompletableFuture<>();
         ServerRepository repository = MineCloud.instance().mongo().repositoryBy(Server.class);
         Server server = new Server();
 
@@ -71,8 +75,37 @@ public final class Deployer {
             if (!deployed) {
                 failedStart(network);
                 repository.deleteById(server.entityId());
+                future.completeExceptionally(new MineCloudException("Was unable to create " + server.name()));
+                return;
             }
+
+            resolvePort(server);
+            future.complete(server);
         }, server.name() + " creator").start();
+
+        return future;
+    }
+
+    public static void resolvePort(Server server) {
+        if (server.port() != -1) {
+            return;
+        }
+
+        try {
+            ContainerInfo info = MineCloudDaemon.instance().dockerClient().inspectContainer(server.containerId());
+
+            info.networkSettings().ports().forEach((s, l) -> {
+                if (!s.contains("25565") || l == null || l.isEmpty())
+                    return;
+
+                server.setPort(Integer.parseInt(l.get(0).hostPort()));
+                MineCloud.logger().log(Level.INFO, "Set " + server.name() + "'s port to " + server.port());
+            });
+
+            MineCloud.instance().mongo().repositoryBy(Server.class).save(server);
+        } catch (Exception e) {
+            MineCloud.logger().log(Level.SEVERE, "Was unable to set the port of a started server", e);
+        }
     }
 
     public static boolean deployServer(Server server) {
@@ -90,8 +123,9 @@ public final class Deployer {
                         .append("mongo_password", new String(mongoCreds.password()))
                         .append("mongo_database", mongoCreds.database())
 
-                        .append("redis_host", redisCreds.hosts()[0])
+                        .append("redis_host", redisCreds.formattedHosts())
                         .append("redis_password", new String(redisCreds.password()))
+                        .append("redis_master", redisCreds.database())
                         .append("SERVER_MOD", server.type().mod())
                         .append("DEDICATED_RAM", String.valueOf(server.type().dedicatedRam()))
                         .append("MAX_PLAYERS", String.valueOf(server.type().maxPlayers()))
@@ -167,8 +201,9 @@ public final class Deployer {
                         .append("mongo_password", new String(mongoCreds.password()))
                         .append("mongo_database", mongoCreds.database())
 
-                        .append("redis_host", redisCreds.hosts()[0])
+                        .append("redis_host", redisCreds.formattedHosts())
                         .append("redis_password", new String(redisCreds.password()))
+                        .append("redis_master", redisCreds.database())
                         .append("DEDICATED_RAM", String.valueOf(type.dedicatedRam()))
 
                         .append("bungee_id", node.publicIp())
@@ -182,11 +217,13 @@ public final class Deployer {
                 .publishAllPorts(true)
                 .build();
 
+        String name = bungee.containerId(); // named after the bungee so it can be killed by id
+
         try {
-            ContainerInfo info = client.inspectContainer("bungee");
+            ContainerInfo info = client.inspectContainer(name);
 
             if (info.state().running()) {
-                client.killContainer("bungee");
+                client.killContainer(name);
             }
 
             client.removeContainer(info.id());
@@ -195,7 +232,7 @@ public final class Deployer {
         ContainerCreation creation;
 
         try {
-            creation = client.createContainer(config, type.name());
+            creation = client.createContainer(config, name);
 
             client.startContainer(creation.id(), hostConfig);
         } catch (InterruptedException | DockerException ex) {
@@ -220,12 +257,19 @@ public final class Deployer {
             return;
         }
 
-        List<Node> nodes = network.nodes();
+        NetworkRepository repository = MineCloud.instance().mongo().repositoryBy(Network.class);
+        Network stored = repository.findOne("_id", network.name()); // the cached network is shared, edit a copy
+
+        if (stored == null) {
+            return;
+        }
+
+        List<Node> nodes = new ArrayList<>(stored.nodes());
 
         nodes.removeIf((node) -> node.name().equalsIgnoreCase(System.getenv("node-name")));
-        network.setNodes(nodes);
+        stored.setNodes(nodes);
 
-        MineCloud.instance().mongo().repositoryBy(Network.class).save(network);
+        repository.save(stored);
         MineCloud.logger().log(Level.SEVERE, "Failed to create containers 3 times! Removing node from network...");
     }
 
@@ -18,14 +18,16 @@ package io.minecloud.daemon;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.DockerException;
-import com.spotify.docker.client.messages.ContainerInfo;
 import io.minecloud.MineCloud;
 import io.minecloud.db.Credentials;
 import io.minecloud.db.mongo.AbstractMongoRepository;
 import io.minecloud.db.mongo.MongoDatabase;
+import io.minecloud.db.redis.DuplicateFilter;
+import io.minecloud.db.redis.HeartbeatRegistry;
 import io.minecloud.db.redis.RedisDatabase;
-import io.minecloud.db.redis.msg.MessageType;
-import io.minecloud.db.redis.msg.binary.MessageInputStream;
+import io.minecloud.db.redis.msg.Message;
+import io.minecloud.db.redis.msg.Priority;
+import io.minecloud.db.redis.msg.types.*;
 import io.minecloud.db.redis.pubsub.SimpleRedisChannel;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.bungee.type.BungeeType;
@@ -43,6 +45,8 @@ import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public class MineCloudDaemon {
@@ -52,6 +56,7 @@ public class MineCloudDaemon {
     private final DockerClient dockerClient;
     private final RedisDatabase redis;
     private final MongoDatabase mongo;
+    private final DuplicateFilter commands;
 
     private MineCloudDaemon(Properties properties) {
         redis = MineCloud.instance().redis();
@@ -59,139 +64,103 @@ public class MineCloudDaemon {
         dockerClient = new DefaultDockerClient("unix:///var/run/docker.sock");
 
         node = (String) properties.get("node-name");
+        commands = DuplicateFilter.create(redis, "daemon:" + node, 10, TimeUnit.MINUTES, 4096);
+        HeartbeatRegistry.create(redis, HeartbeatRegistry.NODES).beatPeriodically(node);
         instance = this;
 
         redis.addChannel(SimpleRedisChannel.create("server-create", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY) {
-                        return;
-                    }
-
-                    MessageInputStream stream = message.contents();
-
-                    if (!stream.readString().equalsIgnoreCase(node)) {
-                        return;
-                    }
+                .addCallback(this::deployFrom));
 
-                    Network network = mongo.repositoryBy(Network.class).findFirst(stream.readString());
-                    ServerType type = mongo.repositoryBy(ServerType.class).findFirst(stream.readString());
-                    List<ServerMetadata> metadata = new ArrayList<>();
-                    int size = stream.readVarInt32();
+        redis.respond("server-deploy", (request) -> {
+            CompletableFuture<Server> deployment = deployFrom(request);
 
-                    for (int i = 0; i < size; i++) {
-                        metadata.add(new ServerMetadata(stream.readString(), stream.readString()));
-                    }
+            if (deployment == null) {
+                return null;
+            }
 
-                    Deployer.deployServer(network, type, metadata);
-                }));
+            return deployment.thenApply((server) -> Message.messageFrom(new ServerDeployed(server.name(), server.port())));
+        });
 
-        redis.addChannel(SimpleRedisChannel.create("server-kill", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY) {
+        redis.addChannel(SimpleRedisChannel.create("server-kill", redis, Priority.HIGH)
+                .addCallback(ServerKill.class, (message) -> {
+                    if (!message.node().equalsIgnoreCase(node))
                         return;
-                    }
 
-                    MessageInputStream stream = message.contents();
-
-                    if (!stream.readString().equalsIgnoreCase(node))
+                    if (!commands.firstSeen(message.idempotencyKey()))
                         return;
 
-                    Server server = mongo.repositoryBy(Server.class).findFirst(stream.readString());
+                    // already removed from the db when reaped by the controller
+                    Server server = mongo.repositoryBy(Server.class).findFirst(message.server());
 
-                    if (!server.node().name().equals(node)) {
+                    if (server != null && !server.nodeSnapshot().name().equals(node)) {
                         MineCloud.logger().log(Level.SEVERE, "Invalid request was sent to kill a server " +
                                 "not on the current node");
                         return;
                     }
 
                     try {
-                        dockerClient.killContainer(server.containerId());
-                        MineCloud.logger().info("Killed server " + server.name()
-                                + " with container id " + server.containerId());
+                        dockerClient.killContainer(message.server()); // containers are named after their server
+                        MineCloud.logger().info("Killed server " + message.server());
 
-                        mongo.repositoryBy(Server.class).delete(server);
+                        if (server != null) {
+                            mongo.repositoryBy(Server.class).delete(server);
+                        }
                     } catch (DockerException | InterruptedException e) {
                         MineCloud.logger().log(Level.SEVERE, "Was unable to kill a server", e);
+                        commands.forget(message.idempotencyKey()); // so a retry tries again
                     }
                 }));
 
         redis.addChannel(SimpleRedisChannel.create("bungee-create", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY) {
-                        return;
-                    }
-
-                    MessageInputStream stream = message.contents();
-
-                    if (!stream.readString().equalsIgnoreCase(node))
+                .addCallback(BungeeCreate.class, (message) -> {
+                    if (!message.node().equalsIgnoreCase(node))
                         return;
 
-                    Network network = mongo.repositoryBy(Network.class).findFirst(stream.readString());
-                    BungeeType type = mongo.repositoryBy(BungeeType.class).findFirst(stream.readString());
+                    commands.once(message.idempotencyKey(), () -> {
+                        Network network = mongo.repositoryBy(Network.class).findFirst(message.network());
+                        BungeeType type = mongo.repositoryBy(BungeeType.class).findFirst(message.type());
 
-                    Deployer.deployBungee(network, type);
+                        Deployer.deployBungee(network, type);
+                    });
                 }));
 
-        redis.addChannel(SimpleRedisChannel.create("bungee-kill", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY) {
+        redis.addChannel(SimpleRedisChannel.create("bungee-kill", redis, Priority.HIGH)
+                .addCallback(BungeeKill.class, (message) -> {
+                    if (!message.node().equalsIgnoreCase(node))
                         return;
-                    }
-
-                    MessageInputStream stream = message.contents();
 
-                    if (!stream.readString().equalsIgnoreCase(node))
+                    if (!commands.firstSeen(message.idempotencyKey()))
                         return;
 
-                    Bungee bungee = mongo.repositoryBy(Bungee.class).findFirst(stream.readString());
+                    Bungee bungee = mongo.repositoryBy(Bungee.class).findFirst(message.bungee());
 
-                    if (!bungee.node().name().equals(node)) {
+                    if (bungee != null && !bungee.nodeSnapshot().name().equals(node)) {
                         MineCloud.logger().log(Level.SEVERE, "Invalid request was sent to kill a bungee " +
                                 "not on the current node");
                         return;
                     }
 
                     try {
-                        dockerClient.killContainer(bungee.containerId());
-                        MineCloud.logger().info("Killed bungee " + bungee.name()
-                                + " with container id " + bungee.containerId());
+                        dockerClient.killContainer(message.bungee()); // containers are named after their bungee
+                        MineCloud.logger().info("Killed bungee " + message.bungee());
 
-                        mongo.repositoryBy(Bungee.class).delete(bungee);
+                        if (bungee != null) {
+                            mongo.repositoryBy(Bungee.class).delete(bungee);
+                        }
                     } catch (DockerException | InterruptedException e) {
                         MineCloud.logger().log(Level.SEVERE, "Was unable to kill a server", e);
+                        commands.forget(message.idempotencyKey()); // so a retry tries again
                     }
                 }));
 
         redis.addChannel(SimpleRedisChannel.create("server-start-notif", redis)
-                .addCallback((message) -> {
-                    if (message.type() != MessageType.BINARY)
-                        return;
-
-                    MessageInputStream stream = message.contents();
-
-                    Server server = mongo.repositoryBy(Server.class).findFirst(stream.readString());
+                .addCallback(ServerStartNotif.class, (message) -> {
+                    Server server = mongo.repositoryBy(Server.class).findFirst(message.server());
 
-                    if (!server.node().name().equals(node))
+                    if (!server.nodeSnapshot().name().equals(node))
                         return;
 
-                    if (server.port() != -1)
-                        return; // don't even know how this would happen
-
-                    try {
-                        ContainerInfo info = dockerClient.inspectContainer(server.containerId());
-
-                        info.networkSettings().ports().forEach((s, l) -> {
-                            if (!s.contains("25565"))
-                                return;
-
-                            server.setPort(Integer.parseInt(l.get(0).hostPort()));
-                            MineCloud.logger().log(Level.INFO, "Set " + server.name() + "'s port to " + server.port());
-                        });
-
-                        mongo.repositoryBy(Server.class).save(server);
-                    } catch (Exception e) {
-                        MineCloud.logger().log(Level.SEVERE, "Was unable to set the port of a started server", e);
-                    }
+                    Deployer.resolvePort(server);
                 }));
 
         redis.addChannel(SimpleRedisChannel.create("server-shutdown-notif", redis));
@@ -271,6 +240,37 @@ public class MineCloudDaemon {
         }
     }
 
+    private CompletableFuture<Server> deployFrom(Message message) {
+        if (!message.is(ServerCreate.class)) {
+            return null;
+        }
+
+        ServerCreate request = message.as(ServerCreate.class);
+
+        if (!request.node().equalsIgnoreCase(node)) {
+            return null;
+        }
+
+        // a repeat gets the deployment of the first delivery, so a retried request is still answered
+        CompletableFuture<Server> deployment = commands.once(request.idempotencyKey(), () -> {
+            Network network = mongo.repositoryBy(Network.class).findFirst(request.network());
+            ServerType type = mongo.repositoryBy(ServerType.class).findFirst(request.type());
+            List<ServerMetadata> metadata = new ArrayList<>();
+
+            if (request.metadata() != null) {
+                request.metadata().forEach((key, value) -> metadata.add(new ServerMetadata(key, value)));
+            }
+
+            return Deployer.deployServer(network, type, metadata);
+        });
+
+        if (deployment == null) {
+            MineCloud.logger().info("Dropped repeated deploy of " + request.type() + " (" + request.idempotencyKey() + ")");
+        }
+
+        return deployment;
+    }
+
     public Node node() {
         return ((NodeRepository) mongo.repositoryBy(Node.class)).nodeBy(node);
     }
@@ -310,9 +310,10 @@ public class MineCloudDaemon {
                 properties.getProperty("mongo-username"),
                 properties.getProperty("mongo-password").toCharArray(),
                 properties.getProperty("mongo-database"));
-        Credentials redis = new Credentials(new String[] {properties.getProperty("redis-host")},
+        Credentials redis = new Credentials(properties.getProperty("redis-host").split(";"),
                 "",
-                properties.getProperty("redis-password").toCharArray());
+                properties.getProperty("redis-password").toCharArray(),
+                properties.getProperty("redis-master", ""));
 
         MineCloud.instance().initiateMongo(mongo);
         MineCloud.instance().initiateRedis(redis);
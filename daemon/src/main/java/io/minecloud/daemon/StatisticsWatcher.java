@@ -16,10 +16,12 @@
 package io.minecloud.daemon;
 
 import io.minecloud.MineCloud;
+import io.minecloud.db.redis.LiveState;
 import io.minecloud.models.bungee.Bungee;
 import io.minecloud.models.nodes.CoreMetadata;
 import io.minecloud.models.nodes.Node;
 import io.minecloud.models.server.Server;
+import io.minecloud.models.server.ServerRepository;
 
 import java.io.File;
 import java.io.IOException;
@@ -39,6 +41,7 @@ import java.util.stream.IntStream;
 public class StatisticsWatcher extends Thread {
     private int[] prevTotal;
     private int[] prevIdle;
+    private final LiveState liveState = LiveState.create(MineCloud.instance().redis());
 
     @Override
     public void run() {
@@ -111,23 +114,20 @@ public class StatisticsWatcher extends Thread {
                 prevTotal[i] = totalCpuTime;
             });
 
-            Collection<Server> servers = MineCloud.instance().mongo()
-                    .repositoryBy(Server.class)
-                    .findAll((server) -> server.node().name().equals(node.name()));
-            Collection<Bungee> bungees = MineCloud.instance().mongo()
-                    .repositoryBy(Bungee.class)
-                    .findAll((bungee) -> bungee.node().name().equals(node.name()));
+            ServerRepository repository = MineCloud.instance().mongo().repositoryBy(Server.class);
+            Collection<Server> servers = node.servers();
+            Collection<Bungee> bungees = node.bungees();
             int ramUsed = 0;
 
-            for (Server server : servers) {
-                ramUsed += server.ramUsage();
+            for (int ramUsage : repository.ramUsages(servers).values()) {
+                ramUsed += ramUsage;
             }
 
             for (Bungee bungee : bungees) {
                 ramUsed += bungee.ramUsage();
             }
 
-            node.setAvailableRam(node.type().ram() - ramUsed);
+            node.setAvailableRam(node.typeSnapshot().ram() - ramUsed);
 
             List<CoreMetadata> cores = new ArrayList<>();
 
@@ -141,7 +141,7 @@ public class StatisticsWatcher extends Thread {
             });
 
             node.setCoreMetadata(cores);
-            MineCloud.instance().mongo().repositoryBy(Node.class).save(node);
+            liveState.updateNode(node.name(), node.typeSnapshot().ram() - ramUsed, cores);
 
             try {
                 Thread.sleep(1000L);